@@ -0,0 +1,146 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Copies response bodies into files through fixed-size buffers.
+ * The buffers are pooled across downloads, so the heap used by a download does
+ * not depend on the size of the image and concurrent downloads do not allocate
+ * a new buffer for every file.
+ * <p>
+ * {@link #HEAP} uses heap buffers. {@link #DIRECT} uses direct buffers, which
+ * {@link FileChannel#write(ByteBuffer, long)} hands to the operating system as
+ * they are, without the extra copy into a temporary direct buffer that every
+ * write of a heap buffer costs. Both modes still copy every byte through user
+ * space: HTTP bodies are not file channels, so {@link FileChannel#transferFrom}
+ * cannot move them in the kernel.
+ */
+final class ChannelCopier {
+
+    /**
+     * Receives the number of bytes of each write to the file.
+     */
+    interface Progress {
+
+        /**
+         * Reports one write. Throwing stops the copy.
+         *
+         * @param bytes The number of bytes written.
+         * @throws IOException To abort the copy.
+         */
+        void copied(long bytes) throws IOException;
+    }
+
+    static final int BUFFER_SIZE = 65536;
+    private static final int MAX_POOLED = 64;
+
+    static final ChannelCopier HEAP = new ChannelCopier(false);
+    static final ChannelCopier DIRECT = new ChannelCopier(true);
+
+    private final boolean direct;
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+
+    private ChannelCopier(boolean direct) {
+        this.direct = direct;
+    }
+
+    /**
+     * Copies a body into a file at the given position, without changing the
+     * position of the file channel, so several ranges can be written in parallel.
+     *
+     * @param source The body of the response; it is not closed.
+     * @param target The channel of the file.
+     * @param position The offset in the file of the first byte.
+     * @param maxBytes The maximum number of bytes to copy, or -1 to copy until the end of the body.
+     * @param progress Receives the number of bytes of each write.
+     * @return The number of bytes copied.
+     * @throws IOException If reading the body or writing the file fails.
+     */
+    long copy(ReadableByteChannel source, FileChannel target, long position, long maxBytes, Progress progress)
+            throws IOException {
+        ByteBuffer buffer = acquire();
+        try {
+            long copied = 0;
+            while (maxBytes < 0 || copied < maxBytes) {
+                buffer.clear();
+                if (maxBytes >= 0 && maxBytes - copied < buffer.capacity()) {
+                    buffer.limit((int) (maxBytes - copied));
+                }
+                int read = source.read(buffer);
+                if (read == -1) {
+                    break;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    target.write(buffer, position + copied + buffer.position());
+                }
+                copied += read;
+                progress.copied(read);
+            }
+            return copied;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Copies a body into the output of an {@link ImageSink}.
+     *
+     * @param source The body of the response; it is not closed.
+     * @param target The output of the sink.
+     * @param progress Receives the number of bytes of each write.
+     * @return The number of bytes copied.
+     * @throws IOException If reading the body or writing to the sink fails.
+     */
+    long copy(ReadableByteChannel source, ImageSink.Output<?> target, Progress progress) throws IOException {
+        ByteBuffer buffer = acquire();
+        try {
+            long copied = 0;
+            int read;
+            while ((read = source.read(buffer)) != -1) {
+                buffer.flip();
+                target.write(buffer);
+                buffer.clear();
+                copied += read;
+                progress.copied(read);
+            }
+            return copied;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Takes a buffer from the pool, or allocates one if the pool is empty.
+     *
+     * @return A cleared buffer of {@link #BUFFER_SIZE} bytes.
+     */
+    private ByteBuffer acquire() {
+        ByteBuffer buffer;
+        synchronized (pool) {
+            buffer = pool.pollFirst();
+        }
+        if (buffer != null) {
+            return buffer;
+        }
+        return direct ? ByteBuffer.allocateDirect(BUFFER_SIZE) : ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers beyond the pool limit are left to the garbage collector.
+     *
+     * @param buffer The buffer.
+     */
+    private void release(ByteBuffer buffer) {
+        buffer.clear();
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED) {
+                pool.addFirst(buffer);
+            }
+        }
+    }
+}
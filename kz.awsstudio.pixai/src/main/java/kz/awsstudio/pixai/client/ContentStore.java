@@ -0,0 +1,256 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Content-addressed image store. Each image is stored under the SHA-256 of its
+ * bytes, which is computed while the image streams in, in subdirectories named
+ * after the first bytes of the hash, for example
+ * {@code objects/3f/a2/3fa2...e1.png}. No directory grows beyond 256 entries
+ * per level, and an image that is already stored is detected when it completes
+ * and not written a second time.
+ * <p>
+ * The store keeps an index from task ID to image in {@code tasks.tsv}, so the
+ * image of a task is found without hashing or listing directories.
+ * Use it with {@link PixAIClient#run(GenerationRequest, ImageSink)}.
+ */
+public final class ContentStore implements ImageSink<Path> {
+
+    private static final Logger LOGGER = Logger.getLogger(ContentStore.class.getName());
+    private static final String INDEX_FILE = "tasks.tsv";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path root;
+    private final Path objects;
+    private final Path incoming;
+    private final Path index;
+    private final int levels;
+    private final ConcurrentMap<String, String> tasks = new ConcurrentHashMap<>();
+
+    /**
+     * Opens a store with two levels of subdirectories.
+     *
+     * @param root The root directory; it is created if needed.
+     * @throws IOException If the directories or the index cannot be read or created.
+     */
+    public ContentStore(Path root) throws IOException {
+        this(root, 2);
+    }
+
+    /**
+     * Opens a store.
+     *
+     * @param root The root directory; it is created if needed.
+     * @param levels The number of subdirectory levels, each named after one byte of the hash, from 1 to 4.
+     * @throws IOException If the directories or the index cannot be read or created.
+     */
+    public ContentStore(Path root, int levels) throws IOException {
+        if (levels < 1 || levels > 4) {
+            throw new IllegalArgumentException("levels must be between 1 and 4");
+        }
+        this.root = root;
+        this.objects = root.resolve("objects");
+        this.incoming = root.resolve("incoming");
+        this.index = root.resolve(INDEX_FILE);
+        this.levels = levels;
+        Files.createDirectories(objects);
+        Files.createDirectories(incoming);
+        loadIndex();
+    }
+
+    @Override
+    public Output<Path> open(ImageInfo image) throws IOException {
+        return new Upload(image);
+    }
+
+    /**
+     * Finds the image stored for a task.
+     *
+     * @param taskId The ID of the generation task.
+     * @return The path of the image, or null if none is stored for the task.
+     */
+    public Path find(String taskId) {
+        String name = tasks.get(taskId);
+        if (name == null) {
+            return null;
+        }
+        Path file = objectPath(name);
+        return Files.exists(file) ? file : null;
+    }
+
+    /**
+     * Makes the image of a task available under another name with a hard link,
+     * so it can be given a readable name without storing its bytes twice.
+     * Where the filesystem does not support hard links, the image is copied.
+     *
+     * @param taskId The ID of the generation task.
+     * @param link The path of the link; it must not exist.
+     * @return The path of the link.
+     * @throws IOException If no image is stored for the task or the link cannot be created.
+     */
+    public Path link(String taskId, Path link) throws IOException {
+        Path file = find(taskId);
+        if (file == null) {
+            throw new IOException("No image stored for task " + taskId);
+        }
+        try {
+            return Files.createLink(link, file);
+        } catch (UnsupportedOperationException e) {
+            return Files.copy(file, link);
+        }
+    }
+
+    /**
+     * Returns the root directory of the store.
+     *
+     * @return The root directory.
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the path of a stored object.
+     *
+     * @param name The file name of the object: the hex hash and the extension.
+     * @return The path in the fan-out directories.
+     */
+    private Path objectPath(String name) {
+        Path directory = objects;
+        for (int i = 0; i < levels; i++) {
+            directory = directory.resolve(name.substring(2 * i, 2 * i + 2));
+        }
+        return directory.resolve(name);
+    }
+
+    /**
+     * Reads the task index. Later lines override earlier ones.
+     *
+     * @throws IOException If the index cannot be read.
+     */
+    private void loadIndex() throws IOException {
+        if (!Files.exists(index)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    tasks.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the image of a task in the index.
+     *
+     * @param taskId The ID of the generation task.
+     * @param name The file name of the object.
+     * @throws IOException If the index cannot be written.
+     */
+    private synchronized void record(String taskId, String name) throws IOException {
+        if (name.equals(tasks.get(taskId))) {
+            return;
+        }
+        try (Writer writer = Files.newBufferedWriter(index, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            writer.write(taskId + "\t" + name + "\n");
+        }
+        tasks.put(taskId, name);
+    }
+
+    /**
+     * Encodes a content hash as lowercase hexadecimal text.
+     *
+     * @param bytes The hash.
+     * @return The hex text.
+     */
+    private static String hex(byte[] bytes) {
+        char[] text = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            text[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            text[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(text);
+    }
+
+    /**
+     * Writes one image to a temporary file while hashing it, and moves it to its
+     * content address once complete.
+     */
+    private final class Upload implements Output<Path> {
+
+        private final ImageInfo image;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final MessageDigest digest;
+
+        private Upload(ImageInfo image) throws IOException {
+            this.image = image;
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException("SHA-256 is not available", e);
+            }
+            this.temporary = Files.createTempFile(incoming, "pixai-", ResumableDownload.PART_SUFFIX);
+            this.channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            digest.update(data.duplicate());
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+
+        @Override
+        public Path commit() throws IOException {
+            String name = hex(digest.digest()) + "." + image.extension();
+            Path target = objectPath(name);
+            try {
+                channel.close();
+                if (Files.exists(target)) {
+                    Files.delete(temporary);
+                    LOGGER.fine(() -> "Image already stored: " + target);
+                } else {
+                    Files.createDirectories(target.getParent());
+                    ResumableDownload.moveIntoPlace(temporary, target);
+                }
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+            if (image.getTaskId() != null) {
+                record(image.getTaskId(), name);
+            }
+            return target;
+        }
+
+        @Override
+        public void abort() {
+            try {
+                channel.close();
+                Files.deleteIfExists(temporary);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not delete " + temporary, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package kz.awsstudio.pixai.client;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which a generation must be finished, measured on
+ * {@link System#nanoTime()}. The remaining budget is handed to every HTTP call
+ * and to the poller.
+ */
+final class Deadline {
+
+    /**
+     * A deadline that never expires.
+     */
+    static final Deadline NONE = new Deadline(0, false);
+
+    private final long at;
+    private final boolean bounded;
+
+    private Deadline(long at, boolean bounded) {
+        this.at = at;
+        this.bounded = bounded;
+    }
+
+    /**
+     * Creates a deadline the given time from now.
+     *
+     * @param timeout The time budget, or null for no deadline.
+     * @return The deadline.
+     */
+    static Deadline after(Duration timeout) {
+        if (timeout == null) {
+            return NONE;
+        }
+        if (timeout.isNegative()) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        return new Deadline(System.nanoTime() + timeout.toNanos(), true);
+    }
+
+    /**
+     * Checks whether the deadline can expire at all.
+     *
+     * @return False for {@link #NONE}.
+     */
+    boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * Returns the time left.
+     *
+     * @return The remaining nanoseconds, at most 0 once expired, or {@link Long#MAX_VALUE} if unbounded.
+     */
+    long remainingNanos() {
+        return bounded ? at - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the time left as a timeout for an HTTP call.
+     *
+     * @return The remaining time, at least one millisecond, or null if unbounded.
+     */
+    Duration remaining() {
+        return bounded ? Duration.ofNanos(Math.max(remainingNanos(), TimeUnit.MILLISECONDS.toNanos(1))) : null;
+    }
+
+    /**
+     * Checks whether the deadline has passed.
+     *
+     * @return True if no time is left.
+     */
+    boolean isExpired() {
+        return bounded && remainingNanos() <= 0;
+    }
+
+    /**
+     * Limits a point in time to the deadline.
+     *
+     * @param time A value of {@link System#nanoTime()}.
+     * @return The earlier of the two.
+     */
+    long clamp(long time) {
+        return bounded && time - at > 0 ? at : time;
+    }
+}
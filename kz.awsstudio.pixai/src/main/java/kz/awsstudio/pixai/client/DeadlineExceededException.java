@@ -0,0 +1,22 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.IOException;
+
+/**
+ * Signals that a generation did not finish within the time budget passed to
+ * {@link PixAIClient#run(GenerationRequest, java.time.Duration)} or
+ * {@link PixAIClient#runAsync(GenerationRequest, java.time.Duration)}.
+ */
+public class DeadlineExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates the exception.
+     *
+     * @param message The detail message.
+     */
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,295 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writer stage that makes completed downloads durable off the download threads.
+ * Writer threads take the completed {@code .part} files in batches, force each
+ * file to disk, rename it to its final name and then sync every directory touched
+ * by the batch once. The futures complete only after the directory sync, so a
+ * completed image survives a crash.
+ * <p>
+ * Only the directory syncs are grouped: the data of every file is still forced
+ * with a sync of its own, so a burst of images in one directory saves the
+ * directory syncs but not the data syncs.
+ * <p>
+ * A download reserves a place with {@link #reserve()} before it starts and hands
+ * its file over through that place, which it gives back when it finishes. At most
+ * {@code capacity} files are downloading or waiting for a writer at a time, so
+ * completed files cannot pile up in front of slow writers. Further downloads
+ * wait for a place on the returned future, without blocking a thread, and are
+ * thereby slowed down to the speed of the disk.
+ */
+final class DiskWriter {
+
+    /**
+     * A reserved place for one file. Exactly one of {@link #commit(Path, Path, Target)}
+     * and {@link #release()} must be called.
+     */
+    interface Place {
+
+        /**
+         * Hands over a completed file. The place is given back once the file is written.
+         *
+         * @param part The completed file.
+         * @param meta A file to delete once the file is renamed, for example the resume metadata; may be null.
+         * @param target Supplies the final path.
+         * @return A future completed with the final path once the file and its directory are on disk.
+         */
+        CompletableFuture<Path> commit(Path part, Path meta, Target target);
+
+        /**
+         * Gives the place back without handing over a file, for example when the
+         * download failed. Calling it after a commit or a second time has no effect.
+         */
+        void release();
+    }
+
+    /**
+     * Supplies the final path of a file when it is renamed.
+     */
+    interface Target {
+
+        /**
+         * Returns the final path.
+         *
+         * @return The path.
+         * @throws IOException If the path cannot be prepared.
+         */
+        Path get() throws IOException;
+    }
+
+    private static final int MAX_BATCH = 64;
+    private static final Job STOP = new Job(null, null, null);
+
+    private final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    private final ArrayDeque<CompletableFuture<Place>> waiting = new ArrayDeque<>();
+    private final int threads;
+    private int places;
+    private boolean closed;
+
+    /**
+     * Creates the stage and starts its writer threads.
+     *
+     * @param threads The number of writer threads.
+     * @param capacity The maximum number of files reserved, downloading or queued for the writers at a time.
+     */
+    DiskWriter(int threads, int capacity) {
+        this.threads = threads;
+        this.places = capacity;
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::run, "pixai-disk-writer-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Requests a place for a file about to be downloaded.
+     *
+     * @return A future completed with the place once one is free. Cancelling the
+     *         future withdraws the request.
+     */
+    CompletableFuture<Place> reserve() {
+        CompletableFuture<Place> request = new CompletableFuture<>();
+        boolean open;
+        synchronized (this) {
+            open = !closed;
+            if (open) {
+                waiting.addLast(request);
+            }
+        }
+        if (open) {
+            dispatch();
+        } else {
+            request.completeExceptionally(new IOException("The disk writer is closed"));
+        }
+        return request;
+    }
+
+    /**
+     * Stops the writer threads. Files already handed over are still written;
+     * waiting reservations and later hand-overs fail, leaving the {@code .part}
+     * files for a later resume.
+     */
+    void close() {
+        List<CompletableFuture<Place>> dropped;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            dropped = new ArrayList<>(waiting);
+            waiting.clear();
+            for (int i = 0; i < threads; i++) {
+                queue.add(STOP);
+            }
+        }
+        for (CompletableFuture<Place> request : dropped) {
+            request.completeExceptionally(new IOException("The disk writer is closed"));
+        }
+    }
+
+    /**
+     * Grants free places to waiting requests. The futures are completed outside
+     * the lock, since completing them runs the dependent stages.
+     */
+    private void dispatch() {
+        while (true) {
+            CompletableFuture<Place> next;
+            synchronized (this) {
+                while (!waiting.isEmpty() && waiting.peekFirst().isDone()) {
+                    waiting.pollFirst();
+                }
+                if (places == 0 || waiting.isEmpty()) {
+                    return;
+                }
+                places--;
+                next = waiting.pollFirst();
+            }
+            if (!next.complete(new ReservedPlace())) {
+                finished(1);
+            }
+        }
+    }
+
+    /**
+     * Gives back places and grants them to waiting requests.
+     *
+     * @param count The number of places.
+     */
+    private void finished(int count) {
+        synchronized (this) {
+            places += count;
+        }
+        dispatch();
+    }
+
+    /**
+     * Main loop of a writer thread.
+     */
+    private void run() {
+        List<Job> batch = new ArrayList<>(MAX_BATCH);
+        boolean stopped = false;
+        while (!stopped) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            while (job != null) {
+                if (job == STOP) {
+                    stopped = true;
+                    break;
+                }
+                batch.add(job);
+                job = batch.size() < MAX_BATCH ? queue.poll() : null;
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                finished(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Makes a batch of files durable.
+     *
+     * @param batch The files.
+     */
+    private static void write(List<Job> batch) {
+        Set<Path> directories = new LinkedHashSet<>();
+        List<Job> renamed = new ArrayList<>(batch.size());
+        for (Job job : batch) {
+            try {
+                try (FileChannel channel = FileChannel.open(job.part, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+                job.file = ResumableDownload.moveIntoPlace(job.part, job.target.get());
+                if (job.meta != null) {
+                    Files.deleteIfExists(job.meta);
+                }
+                directories.add(job.file.toAbsolutePath().getParent());
+                renamed.add(job);
+            } catch (IOException | RuntimeException e) {
+                job.future.completeExceptionally(e);
+            }
+        }
+        for (Path directory : directories) {
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // Some platforms, such as Windows, cannot open or sync a directory; the rename is durable there without it.
+            }
+        }
+        for (Job job : renamed) {
+            job.future.complete(job.file);
+        }
+    }
+
+    /**
+     * A granted place.
+     */
+    private final class ReservedPlace implements Place {
+
+        private final AtomicBoolean used = new AtomicBoolean();
+
+        @Override
+        public CompletableFuture<Path> commit(Path part, Path meta, Target target) {
+            Job job = new Job(part, meta, target);
+            if (!used.compareAndSet(false, true)) {
+                job.future.completeExceptionally(new IllegalStateException("The place has already been used"));
+                return job.future;
+            }
+            synchronized (DiskWriter.this) {
+                if (!closed) {
+                    queue.add(job);
+                    return job.future;
+                }
+            }
+            finished(1);
+            job.future.completeExceptionally(new IOException("The disk writer is closed"));
+            return job.future;
+        }
+
+        @Override
+        public void release() {
+            if (used.compareAndSet(false, true)) {
+                finished(1);
+            }
+        }
+    }
+
+    /**
+     * A file waiting for a writer.
+     */
+    private static final class Job {
+
+        private final Path part;
+        private final Path meta;
+        private final Target target;
+        private final CompletableFuture<Path> future = new CompletableFuture<>();
+        private Path file;
+
+        private Job(Path part, Path meta, Target target) {
+            this.part = part;
+            this.meta = meta;
+            this.target = target;
+        }
+    }
+}
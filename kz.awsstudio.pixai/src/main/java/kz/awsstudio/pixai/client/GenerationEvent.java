@@ -0,0 +1,163 @@
+package kz.awsstudio.pixai.client;
+
+import java.nio.file.Path;
+
+/**
+ * Lifecycle event of a single generation, emitted by
+ * {@link PixAIClient#publish(GenerationRequest)}.
+ * The concrete event types are the nested classes of this class.
+ */
+public abstract class GenerationEvent {
+
+    private final String taskId;
+
+    private GenerationEvent(String taskId) {
+        this.taskId = taskId;
+    }
+
+    /**
+     * Returns the ID of the generation task.
+     *
+     * @return The task ID.
+     */
+    public String getTaskId() {
+        return taskId;
+    }
+
+    /**
+     * The generation task was created on the server.
+     */
+    public static final class Submitted extends GenerationEvent {
+
+        Submitted(String taskId) {
+            super(taskId);
+        }
+
+        @Override
+        public String toString() {
+            return "Submitted[" + getTaskId() + "]";
+        }
+    }
+
+    /**
+     * A status check observed a new status of the task.
+     */
+    public static final class StatusChanged extends GenerationEvent {
+
+        private final String status;
+
+        StatusChanged(String taskId, String status) {
+            super(taskId);
+            this.status = status;
+        }
+
+        /**
+         * Returns the new status of the task.
+         *
+         * @return The status.
+         */
+        public String getStatus() {
+            return status;
+        }
+
+        @Override
+        public String toString() {
+            return "StatusChanged[" + getTaskId() + ", " + status + "]";
+        }
+    }
+
+    /**
+     * The download URL of the generated image is known.
+     */
+    public static final class MediaResolved extends GenerationEvent {
+
+        private final String url;
+
+        MediaResolved(String taskId, String url) {
+            super(taskId);
+            this.url = url;
+        }
+
+        /**
+         * Returns the download URL of the image.
+         *
+         * @return The URL.
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        @Override
+        public String toString() {
+            return "MediaResolved[" + getTaskId() + ", " + url + "]";
+        }
+    }
+
+    /**
+     * Part of the image was downloaded.
+     * Progress is reported at most once every 100 ms, and always for the last byte.
+     * When the subscriber is slower than the download, consecutive progress
+     * events are merged and only the latest one is delivered.
+     */
+    public static final class DownloadProgress extends GenerationEvent {
+
+        private final long bytes;
+        private final long contentLength;
+
+        DownloadProgress(String taskId, long bytes, long contentLength) {
+            super(taskId);
+            this.bytes = bytes;
+            this.contentLength = contentLength;
+        }
+
+        /**
+         * Returns the number of bytes downloaded so far.
+         *
+         * @return The number of bytes.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the size of the image.
+         *
+         * @return The number of bytes, or -1 if the server did not announce it.
+         */
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public String toString() {
+            return "DownloadProgress[" + getTaskId() + ", " + bytes + "/" + contentLength + "]";
+        }
+    }
+
+    /**
+     * The image was saved.
+     */
+    public static final class Saved extends GenerationEvent {
+
+        private final Path path;
+
+        Saved(String taskId, Path path) {
+            super(taskId);
+            this.path = path;
+        }
+
+        /**
+         * Returns the path of the saved image.
+         *
+         * @return The path.
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        @Override
+        public String toString() {
+            return "Saved[" + getTaskId() + ", " + path + "]";
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package kz.awsstudio.pixai.client;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Cold publisher of the lifecycle events of one generation.
+ * Every subscription starts its own generation. Events are buffered until the
+ * subscriber requests them, so the pipeline never blocks on a slow subscriber;
+ * the buffer stays small because consecutive download progress events are merged.
+ */
+final class GenerationPublisher implements Flow.Publisher<GenerationEvent> {
+
+    private final Function<Consumer<GenerationEvent>, CompletableFuture<Path>> pipeline;
+
+    /**
+     * Creates a publisher.
+     *
+     * @param pipeline Starts a generation that reports its events to the given listener.
+     */
+    GenerationPublisher(Function<Consumer<GenerationEvent>, CompletableFuture<Path>> pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super GenerationEvent> subscriber) {
+        EventSubscription subscription = new EventSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        CompletableFuture<Path> generation;
+        try {
+            generation = pipeline.apply(subscription::offer);
+        } catch (RuntimeException e) {
+            subscription.finish(e);
+            return;
+        }
+        subscription.generation = generation;
+        generation.whenComplete((path, error) -> subscription.finish(error));
+        if (subscription.cancelled) {
+            generation.cancel(false);
+        }
+    }
+
+    /**
+     * Subscription buffering the events of one generation until they are requested.
+     */
+    private static final class EventSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super GenerationEvent> subscriber;
+        private final ArrayDeque<GenerationEvent> queue = new ArrayDeque<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile CompletableFuture<Path> generation;
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private Throwable error;
+
+        private EventSubscription(Flow.Subscriber<? super GenerationEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                CompletableFuture<Path> current = generation;
+                if (current != null) {
+                    current.cancel(false);
+                }
+                synchronized (queue) {
+                    queue.clear();
+                }
+                finish(new IllegalArgumentException("Requested a non-positive number of events: " + n));
+                return;
+            }
+            requested.getAndAccumulate(n, (current, added) -> {
+                long sum = current + added;
+                return sum < 0 ? Long.MAX_VALUE : sum;
+            });
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            CompletableFuture<Path> current = generation;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+
+        /**
+         * Buffers an event of the generation.
+         *
+         * @param event The event.
+         */
+        private void offer(GenerationEvent event) {
+            synchronized (queue) {
+                if (done) {
+                    return;
+                }
+                if (event instanceof GenerationEvent.DownloadProgress
+                        && queue.peekLast() instanceof GenerationEvent.DownloadProgress) {
+                    queue.pollLast();
+                }
+                queue.addLast(event);
+            }
+            drain();
+        }
+
+        /**
+         * Records the end of the generation; the terminal signal is sent once
+         * the buffered events have been delivered.
+         *
+         * @param failure The error of the generation, or null if it succeeded.
+         */
+        private void finish(Throwable failure) {
+            if (failure instanceof CompletionException && failure.getCause() != null) {
+                failure = failure.getCause();
+            }
+            synchronized (queue) {
+                if (done) {
+                    return;
+                }
+                error = failure;
+                done = true;
+            }
+            drain();
+        }
+
+        /**
+         * Delivers buffered events as far as the demand allows. Only one thread
+         * runs the loop at a time, so the subscriber is signalled serially.
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                long demand = requested.get();
+                long emitted = 0;
+                while (emitted != demand && !cancelled) {
+                    GenerationEvent event;
+                    synchronized (queue) {
+                        event = queue.pollFirst();
+                    }
+                    if (event == null) {
+                        break;
+                    }
+                    subscriber.onNext(event);
+                    emitted++;
+                }
+                if (cancelled) {
+                    return;
+                }
+
+                boolean empty;
+                Throwable failure;
+                synchronized (queue) {
+                    empty = queue.isEmpty();
+                    failure = error;
+                }
+                if (done && empty) {
+                    cancelled = true;
+                    if (failure != null) {
+                        subscriber.onError(failure);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+
+                if (emitted != 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
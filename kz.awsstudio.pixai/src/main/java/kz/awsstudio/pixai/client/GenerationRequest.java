@@ -0,0 +1,267 @@
+package kz.awsstudio.pixai.client;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * Immutable set of parameters for one image generation.
+ * The parameters are serialized once when the request is built, so a request
+ * can be passed to {@link PixAIClient#run(GenerationRequest)} or
+ * {@link PixAIClient#runAsync(GenerationRequest)} from any number of threads
+ * without locking or copying.
+ */
+public final class GenerationRequest {
+
+    private final String prompt;
+    private final Priority priority;
+    private final Map<String, Object> parameters;
+    private final String parametersJson;
+    private final String parameterClass;
+
+    private GenerationRequest(String prompt, Priority priority, Map<String, Object> parameters) {
+        this.prompt = prompt;
+        this.priority = priority;
+        this.parameters = Collections.unmodifiableMap(new LinkedHashMap<>(parameters));
+
+        JSONObject json = new JSONObject(this.parameters);
+        if (prompt != null) {
+            json.put("prompts", prompt);
+        }
+        this.parametersJson = json.toString();
+        this.parameterClass = PollTimingModel.classify(json);
+    }
+
+    /**
+     * Creates a builder for a new request.
+     *
+     * @return The builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a builder initialized with the parameters of this request.
+     *
+     * @return The builder.
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.prompt = prompt;
+        builder.priority = priority;
+        builder.parameters.putAll(parameters);
+        return builder;
+    }
+
+    /**
+     * Returns a copy of this request with another prompt.
+     *
+     * @param prompt The textual description for generating the image.
+     * @return The new request.
+     */
+    public GenerationRequest withPrompt(String prompt) {
+        return new GenerationRequest(prompt, priority, parameters);
+    }
+
+    /**
+     * Returns the prompt of the request.
+     *
+     * @return The prompt, or null if not set.
+     */
+    public String getPrompt() {
+        return prompt;
+    }
+
+    /**
+     * Returns the priority lane of the request.
+     *
+     * @return The priority.
+     */
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the generation parameters, without the prompt.
+     *
+     * @return An unmodifiable view of the parameters.
+     */
+    public Map<String, Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Returns the parameters of the createGenerationTask mutation, including the prompt,
+     * serialized as JSON.
+     *
+     * @return The JSON text of the parameters.
+     */
+    String toParametersJson() {
+        return parametersJson;
+    }
+
+    /**
+     * Returns the parameter class of the request, see {@link PollTimingModel#classify}.
+     *
+     * @return The parameter class.
+     */
+    String getParameterClass() {
+        return parameterClass;
+    }
+
+    /**
+     * Builder of {@link GenerationRequest}.
+     */
+    public static final class Builder {
+
+        private String prompt;
+        private Priority priority = Priority.NORMAL;
+        private final Map<String, Object> parameters = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the prompt for image generation.
+         *
+         * @param prompt The textual description for generating the image.
+         * @return This builder.
+         */
+        public Builder prompt(String prompt) {
+            this.prompt = prompt;
+            return this;
+        }
+
+        /**
+         * Sets the priority lane of the request.
+         *
+         * @param priority The priority.
+         * @return This builder.
+         */
+        public Builder priority(Priority priority) {
+            if (priority == null) {
+                throw new IllegalArgumentException("priority must not be null");
+            }
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * Sets the negative prompt for image generation.
+         *
+         * @param negativePrompt The text for the negative prompt.
+         * @return This builder.
+         */
+        public Builder negativePrompt(String negativePrompt) {
+            return parameter("negative_prompt", negativePrompt);
+        }
+
+        /**
+         * Enables or disables the Tile option in the image configuration.
+         *
+         * @param enableTile Enable or disable Tile.
+         * @return This builder.
+         */
+        public Builder enableTile(boolean enableTile) {
+            return parameter("enableTile", enableTile);
+        }
+
+        /**
+         * Sets the number of sampling steps for image generation.
+         *
+         * @param samplingSteps The number of sampling steps.
+         * @return This builder.
+         */
+        public Builder samplingSteps(int samplingSteps) {
+            return parameter("samplingSteps", samplingSteps);
+        }
+
+        /**
+         * Sets the CFG Scale for image generation.
+         *
+         * @param cfgScale The CFG Scale value.
+         * @return This builder.
+         */
+        public Builder cfgScale(double cfgScale) {
+            return parameter("cfgScale", cfgScale);
+        }
+
+        /**
+         * Sets the upscale factor for image generation.
+         *
+         * @param upscale The upscale factor value.
+         * @return This builder.
+         */
+        public Builder upscale(double upscale) {
+            return parameter("upscale", upscale);
+        }
+
+        /**
+         * Sets the width of the image in pixels.
+         *
+         * @param width The width of the image.
+         * @return This builder.
+         */
+        public Builder width(int width) {
+            return parameter("width", width);
+        }
+
+        /**
+         * Sets the height of the image in pixels.
+         *
+         * @param height The height of the image.
+         * @return This builder.
+         */
+        public Builder height(int height) {
+            return parameter("height", height);
+        }
+
+        /**
+         * Sets the sampler type for image generation.
+         *
+         * @param sampler The sampler type.
+         * @return This builder.
+         */
+        public Builder sampler(String sampler) {
+            return parameter("sampler", sampler);
+        }
+
+        /**
+         * Sets the model ID for image generation.
+         *
+         * @param modelId The model ID.
+         * @return This builder.
+         */
+        public Builder modelId(String modelId) {
+            return parameter("modelId", modelId);
+        }
+
+        /**
+         * Sets a generation parameter that has no dedicated method.
+         *
+         * @param name The name of the parameter as expected by the PixAI API.
+         * @param value The value of the parameter, or null to remove it.
+         * @return This builder.
+         */
+        public Builder parameter(String name, Object value) {
+            if (value == null) {
+                parameters.remove(name);
+            } else {
+                parameters.put(name, value);
+            }
+            return this;
+        }
+
+        /**
+         * Builds the request and serializes its parameters.
+         *
+         * @return The immutable request.
+         */
+        public GenerationRequest build() {
+            return new GenerationRequest(prompt, priority, parameters);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package kz.awsstudio.pixai.client;
+
+import java.nio.file.Path;
+
+/**
+ * Outcome of a single prompt of a batch started with
+ * {@link PixAIClient#runAll(java.util.Collection, int)}.
+ * Holds either the path of the downloaded image or the error that stopped the generation.
+ */
+public final class GenerationResult {
+
+    private final String prompt;
+    private final Path path;
+    private final Throwable error;
+
+    private GenerationResult(String prompt, Path path, Throwable error) {
+        this.prompt = prompt;
+        this.path = path;
+        this.error = error;
+    }
+
+    /**
+     * Creates a successful result.
+     * 
+     * @param prompt The prompt of the generation.
+     * @param path The path of the downloaded image.
+     * @return The result.
+     */
+    static GenerationResult success(String prompt, Path path) {
+        return new GenerationResult(prompt, path, null);
+    }
+
+    /**
+     * Creates a failed result.
+     * 
+     * @param prompt The prompt of the generation.
+     * @param error The error that stopped the generation.
+     * @return The result.
+     */
+    static GenerationResult failure(String prompt, Throwable error) {
+        return new GenerationResult(prompt, null, error);
+    }
+
+    /**
+     * Returns the prompt of the generation.
+     * 
+     * @return The prompt.
+     */
+    public String getPrompt() {
+        return prompt;
+    }
+
+    /**
+     * Returns the path of the downloaded image.
+     * 
+     * @return The path, or null if the generation failed.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the error that stopped the generation.
+     * 
+     * @return The error, or null if the generation succeeded.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Checks whether the image was generated and downloaded.
+     * 
+     * @return True if the generation succeeded.
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -0,0 +1,38 @@
+package kz.awsstudio.pixai.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.json.JSONObject;
+
+/**
+ * Precomputed request body of one GraphQL operation.
+ * The query is escaped and encoded once, so a request only appends the encoded variables.
+ */
+final class GraphqlOperation {
+
+    private final byte[] prefix;
+
+    /**
+     * Creates an operation.
+     *
+     * @param query The GraphQL document.
+     */
+    GraphqlOperation(String query) {
+        this.prefix = ("{\"query\":" + JSONObject.quote(query) + ",\"variables\":").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds the JSON body of a request.
+     *
+     * @param variablesJson The JSON text of the variables.
+     * @return The encoded body.
+     */
+    byte[] body(String variablesJson) {
+        byte[] variables = variablesJson.getBytes(StandardCharsets.UTF_8);
+        byte[] body = Arrays.copyOf(prefix, prefix.length + variables.length + 1);
+        System.arraycopy(variables, 0, body, prefix.length, variables.length);
+        body[body.length - 1] = '}';
+        return body;
+    }
+}
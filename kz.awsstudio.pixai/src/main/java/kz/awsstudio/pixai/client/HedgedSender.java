@@ -0,0 +1,142 @@
+package kz.awsstudio.pixai.client;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends requests with a hedge according to a {@link HedgingPolicy}.
+ * The latency of a request is the time until its response headers arrive; the
+ * first response wins, the other request is cancelled, and if both arrive the
+ * later one is closed unread.
+ * <p>
+ * The hedge rate is enforced with a budget: every request earns
+ * {@code maxHedgeRate} of a hedge, every hedge spends one, and the unused budget
+ * is capped at {@value #MAX_BURST} hedges.
+ */
+final class HedgedSender {
+
+    private static final double MAX_BURST = 5;
+
+    private final Transport transport;
+    private final ScheduledExecutorService scheduler;
+    private final HedgingPolicy policy;
+    private final long[] latencies;
+    private int latencyCount;
+    private int latencyNext;
+    private double budget;
+
+    /**
+     * Creates a sender.
+     *
+     * @param transport The transport sending the requests.
+     * @param scheduler The scheduler starting the hedges.
+     * @param policy The hedging settings.
+     */
+    HedgedSender(Transport transport, ScheduledExecutorService scheduler, HedgingPolicy policy) {
+        this.transport = transport;
+        this.scheduler = scheduler;
+        this.policy = policy;
+        this.latencies = new long[policy.getWindow()];
+    }
+
+    /**
+     * Sends a request, hedging it if its response is late.
+     *
+     * @param request The request; it must be safe to send twice.
+     * @return A future completed with the first response. Cancelling it cancels both requests.
+     */
+    CompletableFuture<TransportResponse> send(TransportRequest request) {
+        CompletableFuture<TransportResponse> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger();
+        long delayMillis;
+        synchronized (this) {
+            budget = Math.min(budget + policy.getMaxHedgeRate(), MAX_BURST);
+            delayMillis = hedgeDelayMillis();
+        }
+
+        CompletableFuture<TransportResponse> primary = attempt(request, result, pending);
+        ScheduledFuture<?> timer = scheduler.schedule(() -> {
+            if (!result.isDone() && spendBudget()) {
+                CompletableFuture<TransportResponse> hedge = attempt(request, result, pending);
+                result.whenComplete((response, error) -> hedge.cancel(false));
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((response, error) -> {
+            timer.cancel(false);
+            primary.cancel(false);
+        });
+        return result;
+    }
+
+    /**
+     * Sends one copy of the request.
+     *
+     * @param request The request.
+     * @param result The future of the hedged request, completed by the first response.
+     * @param pending The number of copies in flight; the hedged request fails when
+     *                the last one fails.
+     * @return The future of this copy.
+     */
+    private CompletableFuture<TransportResponse> attempt(TransportRequest request, CompletableFuture<TransportResponse> result,
+            AtomicInteger pending) {
+        pending.incrementAndGet();
+        long start = System.nanoTime();
+        CompletableFuture<TransportResponse> call = transport.send(request);
+        call.whenComplete((response, error) -> {
+            if (response != null) {
+                record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                if (!result.complete(response)) {
+                    response.close();
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            }
+        });
+        return call;
+    }
+
+    /**
+     * Takes one hedge from the budget.
+     *
+     * @return True if the budget allowed the hedge.
+     */
+    private synchronized boolean spendBudget() {
+        if (budget < 1) {
+            return false;
+        }
+        budget -= 1;
+        return true;
+    }
+
+    /**
+     * Records the latency of a response.
+     *
+     * @param latencyMillis The time until the response headers arrived.
+     */
+    private synchronized void record(long latencyMillis) {
+        latencies[latencyNext] = latencyMillis;
+        latencyNext = (latencyNext + 1) % latencies.length;
+        latencyCount = Math.min(latencyCount + 1, latencies.length);
+    }
+
+    /**
+     * Computes the delay before a hedge. Must be called while holding the lock.
+     *
+     * @return The configured percentile of the recent latencies, or the initial
+     *         delay while there are too few of them.
+     */
+    private long hedgeDelayMillis() {
+        if (latencyCount < policy.getMinSamples()) {
+            return policy.getInitialDelay().toMillis();
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(policy.getPercentile() * latencyCount) - 1;
+        return sorted[Math.max(index, 0)];
+    }
+}
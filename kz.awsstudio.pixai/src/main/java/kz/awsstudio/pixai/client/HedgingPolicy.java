@@ -0,0 +1,177 @@
+package kz.awsstudio.pixai.client;
+
+import java.time.Duration;
+
+/**
+ * Settings of hedged image downloads.
+ * When the response to a download has not arrived within the configured percentile
+ * of recent download latencies, a second identical request is sent; the first
+ * response wins and the other request is cancelled. Hedges are limited to
+ * {@code maxHedgeRate} per download on average, so a slow CDN does not get
+ * twice the load during an incident.
+ */
+public final class HedgingPolicy {
+
+    private final double percentile;
+    private final double maxHedgeRate;
+    private final int minSamples;
+    private final int window;
+    private final Duration initialDelay;
+
+    private HedgingPolicy(Builder builder) {
+        this.percentile = builder.percentile;
+        this.maxHedgeRate = builder.maxHedgeRate;
+        this.minSamples = builder.minSamples;
+        this.window = builder.window;
+        this.initialDelay = builder.initialDelay;
+    }
+
+    /**
+     * Creates a builder with the default settings: hedge after the 95th percentile,
+     * at most 5 hedges per 100 downloads.
+     *
+     * @return The builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the percentile of recent latencies after which a hedge is sent.
+     *
+     * @return The percentile, between 0 and 1.
+     */
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * Returns the maximum average number of hedges per download.
+     *
+     * @return The rate, between 0 and 1.
+     */
+    public double getMaxHedgeRate() {
+        return maxHedgeRate;
+    }
+
+    /**
+     * Returns the number of observed latencies needed before the percentile is used.
+     *
+     * @return The number of samples.
+     */
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * Returns the number of recent latencies the percentile is computed from.
+     *
+     * @return The number of samples.
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Returns the hedge delay used until enough latencies have been observed.
+     *
+     * @return The delay.
+     */
+    public Duration getInitialDelay() {
+        return initialDelay;
+    }
+
+    /**
+     * Builder of {@link HedgingPolicy}.
+     */
+    public static final class Builder {
+
+        private double percentile = 0.95;
+        private double maxHedgeRate = 0.05;
+        private int minSamples = 20;
+        private int window = 200;
+        private Duration initialDelay = Duration.ofSeconds(2);
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the percentile of recent latencies after which a hedge is sent.
+         *
+         * @param percentile The percentile, between 0 and 1, for example 0.95.
+         * @return This builder.
+         */
+        public Builder percentile(double percentile) {
+            if (percentile <= 0 || percentile > 1) {
+                throw new IllegalArgumentException("percentile must be in (0, 1]");
+            }
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * Sets the maximum average number of hedges per download.
+         *
+         * @param maxHedgeRate The rate, between 0 and 1.
+         * @return This builder.
+         */
+        public Builder maxHedgeRate(double maxHedgeRate) {
+            if (maxHedgeRate < 0 || maxHedgeRate > 1) {
+                throw new IllegalArgumentException("maxHedgeRate must be between 0 and 1");
+            }
+            this.maxHedgeRate = maxHedgeRate;
+            return this;
+        }
+
+        /**
+         * Sets the number of observed latencies needed before the percentile is used.
+         *
+         * @param minSamples The number of samples, at least 1.
+         * @return This builder.
+         */
+        public Builder minSamples(int minSamples) {
+            if (minSamples < 1) {
+                throw new IllegalArgumentException("minSamples must be at least 1");
+            }
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * Sets the number of recent latencies the percentile is computed from.
+         *
+         * @param window The number of samples, at least 1.
+         * @return This builder.
+         */
+        public Builder window(int window) {
+            if (window < 1) {
+                throw new IllegalArgumentException("window must be at least 1");
+            }
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Sets the hedge delay used until enough latencies have been observed.
+         *
+         * @param initialDelay The delay.
+         * @return This builder.
+         */
+        public Builder initialDelay(Duration initialDelay) {
+            this.initialDelay = initialDelay;
+            return this;
+        }
+
+        /**
+         * Builds the policy.
+         *
+         * @return The policy.
+         */
+        public HedgingPolicy build() {
+            if (minSamples > window) {
+                throw new IllegalStateException("minSamples must not exceed window");
+            }
+            return new HedgingPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package kz.awsstudio.pixai.client;
+
+/**
+ * Describes a generated image while it is being delivered to an {@link ImageSink}.
+ */
+public final class ImageInfo {
+
+    private final String taskId;
+    private final String mediaId;
+    private final String url;
+    private final String contentType;
+    private final long contentLength;
+
+    ImageInfo(String taskId, String mediaId, String url, String contentType, long contentLength) {
+        this.taskId = taskId;
+        this.mediaId = mediaId;
+        this.url = url;
+        this.contentType = contentType;
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * Returns the ID of the generation task the image belongs to.
+     *
+     * @return The task ID, or null if unknown.
+     */
+    public String getTaskId() {
+        return taskId;
+    }
+
+    /**
+     * Returns the media ID of the image.
+     *
+     * @return The media ID, or null if unknown.
+     */
+    public String getMediaId() {
+        return mediaId;
+    }
+
+    /**
+     * Returns the URL the image is downloaded from.
+     *
+     * @return The URL.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns the media type announced by the media host.
+     *
+     * @return The media type, for example "image/png", or null if none was sent.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Returns the size of the image announced by the media host.
+     *
+     * @return The number of bytes, or -1 if unknown.
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Returns a file name for the image, derived from its media ID or task ID
+     * and its media type, for example "pixai-1234.png".
+     *
+     * @return The file name, or null if neither the media ID nor the task ID is known.
+     */
+    public String suggestedFileName() {
+        String id = mediaId != null ? mediaId : taskId;
+        if (id == null) {
+            return null;
+        }
+        return "pixai-" + id.replaceAll("[^A-Za-z0-9_-]", "_") + "." + extension();
+    }
+
+    /**
+     * Returns the file extension matching the media type.
+     *
+     * @return The extension, "png" if the type is unknown.
+     */
+    String extension() {
+        if (contentType == null) {
+            return "png";
+        }
+        String type = contentType.toLowerCase();
+        if (type.startsWith("image/jpeg")) {
+            return "jpg";
+        }
+        if (type.startsWith("image/webp")) {
+            return "webp";
+        }
+        if (type.startsWith("image/gif")) {
+            return "gif";
+        }
+        return "png";
+    }
+
+    @Override
+    public String toString() {
+        return "ImageInfo{taskId=" + taskId + ", mediaId=" + mediaId + ", contentType=" + contentType
+                + ", contentLength=" + contentLength + "}";
+    }
+}
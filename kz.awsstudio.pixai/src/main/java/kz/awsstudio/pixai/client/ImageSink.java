@@ -0,0 +1,57 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Destination of a generated image. The download streams the body of the image
+ * into an {@link Output} opened for it, so the image never has to be written to
+ * the local disk or held in memory as a whole unless the sink does so itself.
+ * Ready-made sinks are created by {@link ImageSinks} and {@link S3Sink}.
+ *
+ * @param <T> The type of the result of a delivered image, for example its path.
+ */
+public interface ImageSink<T> {
+
+    /**
+     * Opens the destination of one image.
+     *
+     * @param image Describes the image.
+     * @return The output receiving the bytes of the image.
+     * @throws IOException If the destination cannot be opened.
+     */
+    Output<T> open(ImageInfo image) throws IOException;
+
+    /**
+     * Receives the bytes of one image. Exactly one of {@link #commit()} and
+     * {@link #abort()} is called at the end; writes are never concurrent.
+     * A commit that fails is not followed by an abort, so the output cleans up
+     * whatever the failed commit left behind itself.
+     *
+     * @param <T> The type of the result of the delivered image.
+     */
+    interface Output<T> {
+
+        /**
+         * Writes all remaining bytes of the buffer. The buffer is reused after
+         * the method returns, so its content must be copied if it is kept.
+         *
+         * @param data The bytes to write.
+         * @throws IOException If the bytes cannot be written.
+         */
+        void write(ByteBuffer data) throws IOException;
+
+        /**
+         * Completes the image after its last byte was written.
+         *
+         * @return The result of the delivered image.
+         * @throws IOException If the image cannot be completed.
+         */
+        T commit() throws IOException;
+
+        /**
+         * Discards the image after a failed or cancelled download, as far as the destination allows.
+         */
+        void abort();
+    }
+}
@@ -0,0 +1,247 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Factory of the standard {@link ImageSink} implementations.
+ */
+public final class ImageSinks {
+
+    private static final Logger LOGGER = Logger.getLogger(ImageSinks.class.getName());
+
+    private ImageSinks() {
+    }
+
+    /**
+     * Creates a sink that writes images to a stream, for example the response of
+     * a web request. The stream is flushed after each image but not closed.
+     * Bytes already written cannot be taken back if a download fails.
+     *
+     * @param out The stream.
+     * @return A sink whose result is the number of bytes written.
+     */
+    public static ImageSink<Long> outputStream(OutputStream out) {
+        if (out == null) {
+            throw new IllegalArgumentException("out must not be null");
+        }
+        return image -> new StreamOutput(out);
+    }
+
+    /**
+     * Creates a sink that writes images to a channel. The channel is not closed.
+     * Bytes already written cannot be taken back if a download fails.
+     *
+     * @param channel The channel.
+     * @return A sink whose result is the number of bytes written.
+     */
+    public static ImageSink<Long> channel(WritableByteChannel channel) {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel must not be null");
+        }
+        return image -> new ChannelOutput(channel);
+    }
+
+    /**
+     * Creates a sink that keeps each image in memory. The buffer is sized from
+     * the announced length of the image when the media host sends one.
+     *
+     * @param maxBytes The maximum size of an image; larger images fail the download.
+     * @return A sink whose result is a buffer holding the image between its position and limit.
+     */
+    public static ImageSink<ByteBuffer> memory(int maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be at least 1");
+        }
+        return image -> new MemoryOutput(image.getContentLength(), maxBytes);
+    }
+
+    /**
+     * Creates a sink that saves images in a directory, named after
+     * {@link ImageInfo#suggestedFileName()}. Each image is written to a
+     * {@code .part} file first and renamed once complete, so the directory never
+     * holds a partial image.
+     *
+     * @param directory The directory; it is created if needed.
+     * @return A sink whose result is the path of the saved image.
+     */
+    public static ImageSink<Path> directory(Path directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory must not be null");
+        }
+        return image -> {
+            Files.createDirectories(directory);
+            String name = image.suggestedFileName() != null ? image.suggestedFileName() : "pixai-" + UUID.randomUUID() + ".png";
+            return new FileOutput(directory.resolve(name));
+        };
+    }
+
+    /**
+     * Writes to a stream.
+     */
+    private static final class StreamOutput implements ImageSink.Output<Long> {
+
+        private final OutputStream out;
+        private byte[] chunk;
+        private long written;
+
+        private StreamOutput(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            int length = data.remaining();
+            if (data.hasArray()) {
+                out.write(data.array(), data.arrayOffset() + data.position(), length);
+                data.position(data.limit());
+            } else {
+                if (chunk == null) {
+                    chunk = new byte[8192];
+                }
+                while (data.hasRemaining()) {
+                    int n = Math.min(chunk.length, data.remaining());
+                    data.get(chunk, 0, n);
+                    out.write(chunk, 0, n);
+                }
+            }
+            written += length;
+        }
+
+        @Override
+        public Long commit() throws IOException {
+            out.flush();
+            return written;
+        }
+
+        @Override
+        public void abort() {
+        }
+    }
+
+    /**
+     * Writes to a channel.
+     */
+    private static final class ChannelOutput implements ImageSink.Output<Long> {
+
+        private final WritableByteChannel channel;
+        private long written;
+
+        private ChannelOutput(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                written += channel.write(data);
+            }
+        }
+
+        @Override
+        public Long commit() {
+            return written;
+        }
+
+        @Override
+        public void abort() {
+        }
+    }
+
+    /**
+     * Collects an image in a heap buffer that grows as needed.
+     */
+    private static final class MemoryOutput implements ImageSink.Output<ByteBuffer> {
+
+        private final int maxBytes;
+        private ByteBuffer buffer;
+
+        private MemoryOutput(long contentLength, int maxBytes) throws IOException {
+            if (contentLength > maxBytes) {
+                throw new IOException("Image of " + contentLength + " bytes exceeds the limit of " + maxBytes + " bytes");
+            }
+            this.maxBytes = maxBytes;
+            this.buffer = ByteBuffer.allocate(contentLength >= 0 ? (int) contentLength : Math.min(ChannelCopier.BUFFER_SIZE, maxBytes));
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            if (data.remaining() > buffer.remaining()) {
+                long needed = (long) buffer.position() + data.remaining();
+                if (needed > maxBytes) {
+                    throw new IOException("Image exceeds the limit of " + maxBytes + " bytes");
+                }
+                int capacity = (int) Math.min(Math.max(needed, (long) buffer.capacity() * 2), maxBytes);
+                ByteBuffer grown = ByteBuffer.allocate(capacity);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            buffer.put(data);
+        }
+
+        @Override
+        public ByteBuffer commit() {
+            buffer.flip();
+            return buffer;
+        }
+
+        @Override
+        public void abort() {
+            buffer = null;
+        }
+    }
+
+    /**
+     * Writes an image to a partial file and renames it once complete.
+     */
+    private static final class FileOutput implements ImageSink.Output<Path> {
+
+        private final Path target;
+        private final Path part;
+        private final FileChannel channel;
+
+        private FileOutput(Path target) throws IOException {
+            this.target = target;
+            this.part = target.resolveSibling(target.getFileName() + ResumableDownload.PART_SUFFIX);
+            this.channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+
+        @Override
+        public Path commit() throws IOException {
+            try {
+                channel.close();
+                return ResumableDownload.moveIntoPlace(part, target);
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+        }
+
+        @Override
+        public void abort() {
+            try {
+                channel.close();
+                Files.deleteIfExists(part);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not delete " + part, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Transport} running on the JDK {@link HttpClient}.
+ * It negotiates HTTP/2 and multiplexes concurrent requests natively, and lets
+ * applications that use it leave OkHttp and its Kotlin runtime out of their classpath:
+ * OkHttp classes are only loaded when the default transport is built.
+ * <p>
+ * The JDK client applies the timeout of a request to the response headers
+ * only; this transport also closes the body once the timeout has passed since
+ * the request was sent, so a stalled body fails with an
+ * {@link HttpTimeoutException} as it does with OkHttp.
+ */
+public final class JdkHttpTransport implements Transport {
+
+    private static final ScheduledThreadPoolExecutor BODY_TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "pixai-jdk-body-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        BODY_TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final HttpClient client;
+
+    /**
+     * Creates a transport on a new JDK client preferring HTTP/2, with a 10 second
+     * connect timeout.
+     */
+    public JdkHttpTransport() {
+        this(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build());
+    }
+
+    /**
+     * Creates a transport on the given JDK client.
+     *
+     * @param client The JDK client, which may be shared.
+     */
+    public JdkHttpTransport(HttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Returns the JDK client of this transport.
+     *
+     * @return The JDK client.
+     */
+    public HttpClient getClient() {
+        return client;
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> send(TransportRequest request) {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(URI.create(request.getUrl()));
+        } catch (IllegalArgumentException e) {
+            return failed(new IOException("Invalid URL: " + request.getUrl(), e));
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.setHeader(header.getKey(), header.getValue());
+        }
+        if (request.getBody() != null) {
+            builder.setHeader("Content-Type", request.getContentType());
+            builder.method(request.getMethod(), HttpRequest.BodyPublishers.ofByteArray(request.getBody()));
+        } else {
+            builder.method(request.getMethod(), HttpRequest.BodyPublishers.noBody());
+        }
+        Duration timeout = request.getTimeout();
+        if (timeout != null) {
+            builder.timeout(timeout);
+        }
+
+        long sentAt = System.nanoTime();
+        CompletableFuture<HttpResponse<InputStream>> exchange = client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        CompletableFuture<TransportResponse> result = new CompletableFuture<>();
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        exchange.whenComplete((response, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                result.completeExceptionally(cause instanceof IOException ? cause : new IOException(cause));
+            } else {
+                JdkResponse jdkResponse = new JdkResponse(response, timeout, sentAt);
+                if (!result.complete(jdkResponse)) {
+                    jdkResponse.close();
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Creates a future that is already completed with the given exception.
+     *
+     * @param error The exception to complete the future with.
+     * @return The failed future.
+     */
+    private static <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /**
+     * Closes a stream, ignoring errors.
+     *
+     * @param in The stream.
+     */
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // The exchange is abandoned anyway.
+        }
+    }
+
+    /**
+     * Response backed by a JDK response with a streamed body.
+     */
+    private static final class JdkResponse implements TransportResponse {
+
+        private final HttpResponse<InputStream> response;
+        private final InputStream body;
+
+        private JdkResponse(HttpResponse<InputStream> response, Duration timeout, long sentAt) {
+            this.response = response;
+            this.body = timeout != null ? new TimedBody(response.body(), timeout, sentAt) : response.body();
+        }
+
+        @Override
+        public int code() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String header(String name) {
+            return response.headers().firstValue(name).orElse(null);
+        }
+
+        @Override
+        public long contentLength() {
+            return response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        }
+
+        @Override
+        public InputStream body() {
+            return body;
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(body);
+        }
+
+        @Override
+        public String toString() {
+            return "Response{method=" + response.request().method() + ", code=" + response.statusCode()
+                    + ", url=" + response.uri() + "}";
+        }
+    }
+
+    /**
+     * Body that is closed when the timeout of its request has passed. A read
+     * failing because of that reports the timeout.
+     */
+    private static final class TimedBody extends FilterInputStream {
+
+        private final Duration timeout;
+        private final ScheduledFuture<?> expiry;
+        private volatile boolean expired;
+
+        private TimedBody(InputStream in, Duration timeout, long sentAt) {
+            super(in);
+            this.timeout = timeout;
+            long remainingNanos = sentAt + timeout.toNanos() - System.nanoTime();
+            this.expiry = BODY_TIMER.schedule(this::expire, Math.max(remainingNanos, 0), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                throw timedOut(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                return super.read(buffer, offset, length);
+            } catch (IOException e) {
+                throw timedOut(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            expiry.cancel(false);
+            super.close();
+        }
+
+        private void expire() {
+            expired = true;
+            closeQuietly(in);
+        }
+
+        /**
+         * Reports a read failure as a timeout if the body was closed for it.
+         *
+         * @param error The failure of the read.
+         * @return The exception to throw.
+         */
+        private IOException timedOut(IOException error) {
+            if (!expired) {
+                return error;
+            }
+            HttpTimeoutException timedOut = new HttpTimeoutException("Response body not received within " + timeout);
+            timedOut.initCause(error);
+            return timedOut;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * {@link Transport} running on OkHttp. Calls are enqueued on the dispatcher of
+ * the OkHttp client, so no thread waits for a response.
+ */
+public final class OkHttpTransport implements Transport {
+
+    private static final int MAX_CACHED_URLS = 16;
+
+    private final OkHttpClient client;
+    private final ConcurrentMap<String, MediaType> mediaTypes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, HttpUrl> urls = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a transport on the given OkHttp client.
+     *
+     * @param client The OkHttp client; its pool and dispatcher may be shared.
+     */
+    public OkHttpTransport(OkHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Returns the OkHttp client of this transport.
+     *
+     * @return The OkHttp client.
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> send(TransportRequest request) {
+        Call call = client.newCall(toRequest(request));
+        if (request.getTimeout() != null) {
+            call.timeout().timeout(request.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        CompletableFuture<TransportResponse> result = new CompletableFuture<>();
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                if (!result.complete(new OkHttpResponse(response))) {
+                    response.close();
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Converts a request to an OkHttp request, with the URL and media type parsed once.
+     *
+     * @param request The request.
+     * @return The OkHttp request.
+     */
+    Request toRequest(TransportRequest request) {
+        Request.Builder builder = new Request.Builder().url(parseUrl(request.getUrl()));
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        RequestBody body = request.getBody() == null ? null
+                : RequestBody.create(request.getBody(), mediaTypes.computeIfAbsent(request.getContentType(), MediaType::get));
+        return builder.method(request.getMethod(), body).build();
+    }
+
+    /**
+     * Parses a URL, reusing the result for the first {@value #MAX_CACHED_URLS} distinct URLs.
+     * The API endpoint is requested first, so it is always cached; one-off image
+     * URLs beyond the limit are parsed per call.
+     *
+     * @param url The URL.
+     * @return The parsed URL.
+     */
+    private HttpUrl parseUrl(String url) {
+        HttpUrl parsed = urls.get(url);
+        if (parsed == null) {
+            parsed = HttpUrl.get(url);
+            if (urls.size() < MAX_CACHED_URLS) {
+                urls.putIfAbsent(url, parsed);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Response backed by an OkHttp response.
+     */
+    private static final class OkHttpResponse implements TransportResponse {
+
+        private final Response response;
+
+        private OkHttpResponse(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public int code() {
+            return response.code();
+        }
+
+        @Override
+        public String header(String name) {
+            return response.header(name);
+        }
+
+        @Override
+        public long contentLength() {
+            return response.body().contentLength();
+        }
+
+        @Override
+        public InputStream body() {
+            return response.body().byteStream();
+        }
+
+        @Override
+        public ReadableByteChannel bodyChannel() {
+            return response.body().source();
+        }
+
+        @Override
+        public String bodyString() throws IOException {
+            try (Response r = response) {
+                return r.body().string();
+            }
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+
+        @Override
+        public String toString() {
+            return response.toString();
+        }
+    }
+}
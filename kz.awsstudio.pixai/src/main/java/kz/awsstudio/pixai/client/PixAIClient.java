@@ -1,33 +1,115 @@
 package kz.awsstudio.pixai.client;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.lang.reflect.Method;
+import java.net.URI;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import okhttp3.MediaType;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
+import okhttp3.Protocol;
 
 /**
  * Client for interacting with the PixAI API.
  * This class provides methods to generate images based on a given prompt
  * and to download the generated images.
  */
-public class PixAIClient {
+public class PixAIClient implements AutoCloseable {
 
-    private String apiKey;
-    private JSONObject photoConfig = new JSONObject();
-    private OkHttpClient client = new OkHttpClient();
-    private String saveFilePath = "";
+    private final String apiKey;
+    private volatile GenerationRequest defaults = GenerationRequest.builder().build();
+    private final Transport transport;
+    private final Transport mediaTransport;
+    private final String authorization;
+    private final TransportRequest apiRequest;
+    private final HedgedSender hedgedDownloads;
+    private final int downloadSegments;
+    private final long segmentThreshold;
+    private final int downloadRetries;
+    private final ChannelCopier copier;
+    private final DiskWriter diskWriter;
+    private final String mediaUrl;
+    private final int warmConnections;
+    private volatile String saveFilePath = "";
+    private final TaskPoller poller = new TaskPoller(this::fetchTaskStatuses, POLL_SCHEDULER, new PollTimingModel(), 50);
+    private final SubmissionQueue submissions = new SubmissionQueue(Integer.MAX_VALUE, 0.1);
+    private String subscriptionUrl = "wss://gw.pixai.art/graphql";
+    private TaskSubscription subscription;
+    private volatile boolean mediaInPolls = true;
+
+    private static final Logger LOGGER = Logger.getLogger(PixAIClient.class.getName());
+    private static final String API_URL = "https://api.pixai.art/graphql";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final GraphqlOperation CREATE_GENERATION_TASK = new GraphqlOperation(
+            "mutation createGenerationTask($parameters: JSONObject!) { createGenerationTask(parameters: $parameters) { id } }");
+    private static final GraphqlOperation GET_MEDIA_BY_ID = new GraphqlOperation(
+            "query getMediaById($id: String!) { media(id: $id) { urls { variant url } } }");
+    private static final GraphqlOperation GET_TASK_OUTPUTS = new GraphqlOperation(
+            "query getTaskById($id: ID!) { task(id: $id) { outputs } }");
+    private static final GraphqlOperation GET_COMPLETED_TASK = new GraphqlOperation(
+            "query getCompletedTask($id: ID!) { task(id: $id) { id status outputs media { urls { variant url } } } }");
+    private static final GraphqlOperation CANCEL_GENERATION_TASK = new GraphqlOperation(
+            "mutation cancelGenerationTask($id: ID!) { cancelGenerationTask(id: $id) { id } }");
+
+    /**
+     * Status queries by batch size, built on first use.
+     */
+    private static final ConcurrentMap<Integer, GraphqlOperation> GET_TASKS_BY_ID = new ConcurrentHashMap<>();
+
+    /**
+     * Status queries by batch size that also select the media of the tasks flagged
+     * as likely completed, built on first use.
+     */
+    private static final ConcurrentMap<Integer, GraphqlOperation> GET_TASKS_WITH_MEDIA_BY_ID = new ConcurrentHashMap<>();
+
+    /**
+     * Shared scheduler driving the status checks of all in-flight tasks,
+     * so waiting for a generation does not park a thread per task.
+     */
+    private static final ScheduledExecutorService POLL_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "pixai-poll-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Constructor to initialize PixAIClient with the provided API key.
@@ -35,190 +117,771 @@ public class PixAIClient {
      * @param apiKey API key for accessing the PixAI API.
      */
     public PixAIClient(String apiKey) {
-        this.apiKey = apiKey;
+        this(builder().apiKey(apiKey));
+    }
+
+    /**
+     * Constructor used by {@link Builder#build()}.
+     * 
+     * @param builder The configured builder.
+     */
+    private PixAIClient(Builder builder) {
+        this.apiKey = builder.apiKey;
+        this.transport = builder.transport != null ? builder.transport : new OkHttpTransport(builder.buildHttpClient());
+        this.mediaTransport = builder.buildMediaTransport(transport);
+        this.authorization = "Bearer " + apiKey;
+        this.apiRequest = TransportRequest.builder(API_URL).header("Authorization", authorization).build();
+        this.mediaUrl = builder.mediaUrl;
+        this.warmConnections = builder.warmConnections;
+        this.hedgedDownloads = builder.hedging != null ? new HedgedSender(mediaTransport, POLL_SCHEDULER, builder.hedging) : null;
+        this.downloadSegments = builder.downloadSegments;
+        this.segmentThreshold = builder.segmentThreshold;
+        this.downloadRetries = builder.downloadRetries;
+        this.copier = builder.directBufferDownloads ? ChannelCopier.DIRECT : ChannelCopier.HEAP;
+        this.diskWriter = builder.durableDownloads ? new DiskWriter(builder.diskWriterThreads, builder.diskWriterQueue) : null;
     }
 
     /**
-     * Starts the image generation process based on the given prompt.
+     * Creates a builder for a client with a configured HTTP layer.
+     * 
+     * @return The builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Opens connections to the API host and the media host ahead of the first generation,
+     * so that it does not pay the DNS lookup, the TCP connect and the TLS handshake.
+     * Both hosts are contacted concurrently with a few HEAD requests each; the opened
+     * connections stay in the pools of the API and media transports for reuse. Warming up is best
+     * effort: failed requests are ignored.
+     * 
+     * @return A future completed once all warm-up requests have finished.
+     */
+    public CompletableFuture<Void> warmUp() {
+        List<CompletableFuture<Void>> attempts = new ArrayList<>();
+        for (int i = 0; i < warmConnections; i++) {
+            attempts.add(warmUp(transport, API_URL));
+            attempts.add(warmUp(mediaTransport, mediaUrl));
+        }
+        return CompletableFuture.allOf(attempts.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Sends one warm-up request.
+     * 
+     * @param target The transport to warm up.
+     * @param url The URL to contact.
+     * @return A future completed once the request has finished, successfully or not.
+     */
+    private static CompletableFuture<Void> warmUp(Transport target, String url) {
+        TransportRequest request = TransportRequest.builder(url).method("HEAD").build();
+        return target.send(request).handle((response, error) -> {
+            if (response != null) {
+                response.close();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Starts the image generation process based on the given prompt,
+     * using the settings configured on this client.
      * 
      * @param prompt The textual description for generating the image.
+     * @return The path of the downloaded image, or null if the task did not complete.
+     * @throws IOException If an error occurs during the request.
+     */
+    public Path run(String prompt) throws IOException {
+        return run(defaults.withPrompt(prompt));
+    }
+
+    /**
+     * Starts the image generation process for the given request.
+     * The client keeps no per-call state, so it can serve requests with
+     * different settings from several threads at the same time.
+     * 
+     * Interrupting the calling thread stops the polling and cancels the task on the server.
+     * 
+     * @param request The generation request; its prompt must be set.
+     * @return The path of the downloaded image, or null if the task did not complete.
      * @throws IOException If an error occurs during the request.
      */
-    public void run(String prompt) throws IOException {
-        String taskId = createGenerationTask(prompt);
-        String status = pollTaskStatus(taskId);
-        System.out.println("Task status: " + status);
+    public Path run(GenerationRequest request) throws IOException {
+        requirePrompt(request);
+        String taskId;
+        TaskSnapshot snapshot;
+        SubmissionQueue.Slot slot = acquireSlot(request.getPriority());
+        try {
+            taskId = createGenerationTask(request);
+            try {
+                snapshot = pollTaskStatus(taskId, request.getParameterClass());
+            } catch (InterruptedIOException e) {
+                cancelGenerationTask(taskId);
+                throw e;
+            }
+        } finally {
+            slot.release();
+        }
+        System.out.println("Task status: " + snapshot.getStatus());
 
-        if ("completed".equals(status)) {
-            String mediaId = getMediaId(taskId);
-            downloadGeneratedImage(mediaId);
+        if ("completed".equals(snapshot.getStatus())) {
+            TaskSnapshot media = await(resolveMediaAsync(snapshot, Deadline.NONE), "the image of task " + taskId);
+            return downloadFile(media.getDownloadUrl(), media.getMediaId());
         }
+        return null;
     }
 
     /**
-     * Creates a task to generate an image using the PixAI API.
+     * Starts the image generation process for the given request and waits at most
+     * the given time for it. The remaining budget bounds every HTTP call and the
+     * status polling; when it runs out, the local work is stopped and a task still
+     * running on the server is cancelled there.
+     * 
+     * @param request The generation request; its prompt must be set.
+     * @param timeout The time budget of the whole generation, including the download.
+     * @return The path of the downloaded image.
+     * @throws DeadlineExceededException If the generation did not finish in time.
+     * @throws IOException If an error occurs during the request or the task does not complete.
+     */
+    public Path run(GenerationRequest request, Duration timeout) throws IOException {
+        return await(runAsync(request, timeout), "the generation");
+    }
+
+    /**
+     * Starts the image generation process for the given request and delivers the
+     * image to a sink instead of the output directory.
+     * 
+     * @param request The generation request; its prompt must be set.
+     * @param sink The destination of the image.
+     * @return The result of the sink for the delivered image.
+     * @throws IOException If an error occurs during the request, the task does not
+     *         complete or the sink fails.
+     */
+    public <T> T run(GenerationRequest request, ImageSink<T> sink) throws IOException {
+        return await(runAsync(request, sink), "the generation");
+    }
+
+    /**
+     * Runs the generation pipeline for every prompt of the batch.
+     * Each prompt is handled on its own virtual thread when the runtime supports them
+     * (a daemon platform thread otherwise), and at most {@code maxConcurrency}
+     * generations are in flight at the same time. A prompt is only handed to a thread
+     * once a permit is free, so a large batch never uses more than
+     * {@code maxConcurrency} threads. A failing prompt does not abort the rest of the batch.
+     * 
+     * @param prompts The textual descriptions for generating the images.
+     * @param maxConcurrency The maximum number of generations running at the same time.
+     * @return One result per prompt, in the iteration order of {@code prompts}.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the batch.
+     */
+    public List<GenerationResult> runAll(Collection<String> prompts, int maxConcurrency) throws InterruptedException {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+
+        List<String> promptList = new ArrayList<>(prompts);
+        Semaphore permits = new Semaphore(maxConcurrency);
+        ExecutorService executor = newBatchExecutor(maxConcurrency);
+        try {
+            List<Future<GenerationResult>> futures = new ArrayList<>(promptList.size());
+            for (String prompt : promptList) {
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        Path path = run(prompt);
+                        if (path == null) {
+                            return GenerationResult.failure(prompt, new IOException("Task for prompt did not complete"));
+                        }
+                        return GenerationResult.success(prompt, path);
+                    } catch (Exception e) {
+                        return GenerationResult.failure(prompt, e);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            List<GenerationResult> results = new ArrayList<>(futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(GenerationResult.failure(promptList.get(i), e.getCause()));
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts the image generation process asynchronously.
+     * No thread is blocked while the task is being generated: HTTP calls are
+     * sent asynchronously by the {@link Transport} and the task is tracked by the
+     * client-wide poller.
+     * 
+     * Cancelling the returned future stops the generation and cancels the task on the server.
      * 
      * @param prompt The textual description for generating the image.
-     * @return The ID of the generation task.
-     * @throws IOException If an error occurs during the request.
+     * @return A future completed with the path of the downloaded image, or
+     *         completed exceptionally if a request fails or the task does not complete.
      */
-    private String createGenerationTask(String prompt) throws IOException {
-        String graphqlQuery = "mutation createGenerationTask($parameters: JSONObject!) { createGenerationTask(parameters: $parameters) { id } }";
+    public CompletableFuture<Path> runAsync(String prompt) {
+        return runAsync(defaults.withPrompt(prompt));
+    }
 
-        JSONObject variables = new JSONObject();
-        JSONObject parameters = new JSONObject(photoConfig.toString());
-        parameters.put("prompts", prompt);
-        variables.put("parameters", parameters);
+    /**
+     * Starts the image generation process for the given request asynchronously.
+     * Cancelling the returned future stops the generation and cancels the task on the server.
+     * 
+     * @param request The generation request; its prompt must be set.
+     * @return A future completed with the path of the downloaded image, or
+     *         completed exceptionally if a request fails or the task does not complete.
+     */
+    public CompletableFuture<Path> runAsync(GenerationRequest request) {
+        return runAsync(request, event -> { }, Deadline.NONE);
+    }
 
-        JSONObject jsonBody = new JSONObject();
-        jsonBody.put("query", graphqlQuery);
-        jsonBody.put("variables", variables);
+    /**
+     * Starts the image generation process for the given request asynchronously,
+     * bounded by a time budget. The remaining budget bounds every HTTP call and the
+     * status polling; when it runs out, the future fails with a
+     * {@link DeadlineExceededException}, the local work is stopped and a task still
+     * running on the server is cancelled there.
+     * 
+     * @param request The generation request; its prompt must be set.
+     * @param timeout The time budget of the whole generation, including the download.
+     * @return A future completed with the path of the downloaded image, or
+     *         completed exceptionally if a request fails, the task does not complete
+     *         or the deadline expires.
+     */
+    public CompletableFuture<Path> runAsync(GenerationRequest request, Duration timeout) {
+        Deadline deadline;
+        try {
+            deadline = Deadline.after(timeout);
+        } catch (IllegalArgumentException e) {
+            return failedFuture(e);
+        }
+        return runAsync(request, event -> { }, deadline);
+    }
 
-        Request request = sendRequest(jsonBody);
+    /**
+     * Starts the image generation process for the given request asynchronously and
+     * streams the image into a sink instead of the output directory, so it is not
+     * written to the local disk unless the sink does so.
+     * Cancelling the returned future stops the generation and cancels the task on the server.
+     * 
+     * @param request The generation request; its prompt must be set.
+     * @param sink The destination of the image.
+     * @return A future completed with the result of the sink, or completed
+     *         exceptionally if a request fails, the task does not complete or the sink fails.
+     */
+    public <T> CompletableFuture<T> runAsync(GenerationRequest request, ImageSink<T> sink) {
+        if (sink == null) {
+            return failedFuture(new IllegalArgumentException("sink must not be null"));
+        }
+        Consumer<GenerationEvent> listener = event -> { };
+        return runAsync(request, listener, Deadline.NONE,
+                (url, snapshot) -> downloadToSinkAsync(url, snapshot, sink, listener, Deadline.NONE));
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Unexpected code " + response + " with message: " + response.body().string());
+    /**
+     * Creates a publisher of the lifecycle events of a generation.
+     * Each subscription starts its own generation and receives {@link GenerationEvent.Submitted},
+     * {@link GenerationEvent.StatusChanged}, {@link GenerationEvent.MediaResolved},
+     * {@link GenerationEvent.DownloadProgress} and {@link GenerationEvent.Saved} events
+     * as far as it requests them, followed by onComplete, or onError if the generation fails.
+     * Cancelling the subscription stops the generation.
+     * 
+     * @param request The generation request; its prompt must be set.
+     * @return The publisher of the events.
+     */
+    public Flow.Publisher<GenerationEvent> publish(GenerationRequest request) {
+        return new GenerationPublisher(listener -> runAsync(request, listener, Deadline.NONE));
+    }
+
+    /**
+     * Starts the image generation process for the given request asynchronously,
+     * reporting every stage of the generation to a listener.
+     * 
+     * @param request The generation request; its prompt must be set.
+     * @param listener Receives the lifecycle events of the generation.
+     * @param deadline The time by which the generation must be finished.
+     * @return A future completed with the path of the downloaded image.
+     */
+    private CompletableFuture<Path> runAsync(GenerationRequest request, Consumer<GenerationEvent> listener, Deadline deadline) {
+        return runAsync(request, listener, deadline, (url, snapshot) -> {
+            CompletableFuture<Path> saved = downloadFileAsync(url, snapshot.getMediaId(), snapshot.getTaskId(), listener, deadline);
+            return forwardCancel(saved.thenApply(path -> {
+                listener.accept(new GenerationEvent.Saved(snapshot.getTaskId(), path));
+                return path;
+            }), saved);
+        });
+    }
+
+    /**
+     * Runs the generation pipeline: waits for a submission slot, creates the task,
+     * tracks it until it is final and hands the image to the given download.
+     * 
+     * @param request The generation request; its prompt must be set.
+     * @param listener Receives the lifecycle events of the generation.
+     * @param deadline The time by which the generation must be finished.
+     * @param download Delivers the image of the completed task.
+     * @return A future completed with the result of the download.
+     */
+    private <T> CompletableFuture<T> runAsync(GenerationRequest request, Consumer<GenerationEvent> listener, Deadline deadline,
+            ImageDownload<T> download) {
+        try {
+            requirePrompt(request);
+        } catch (IllegalArgumentException e) {
+            return failedFuture(e);
+        }
+        String parameterClass = request.getParameterClass();
+        RunState state = new RunState();
+
+        CompletableFuture<T> pipeline = state.track(submissions.acquire(request.getPriority()))
+                .thenCompose(slot -> {
+                    CompletableFuture<TaskSnapshot> finished = state.track(executeAsync(createGenerationTaskRequest(request), deadline))
+                            .thenApply(responseBody -> {
+                                System.out.println("Start Generation...");
+                                String taskId = responseBody.getJSONObject("data").getJSONObject("createGenerationTask").getString("id");
+                                state.task.set(taskId);
+                                listener.accept(new GenerationEvent.Submitted(taskId));
+                                return taskId;
+                            })
+                            .thenCompose(taskId -> state.track(watchTask(taskId, parameterClass, statusListener(listener), deadline)));
+                    finished.whenComplete((snapshot, error) -> {
+                        slot.release();
+                        String taskId = state.task.getAndSet(null);
+                        if (error != null && taskId != null && (state.abandoned || deadline.isExpired())) {
+                            cancelGenerationTask(taskId);
+                        }
+                    });
+                    return finished;
+                })
+                .thenCompose(snapshot -> {
+                    System.out.println("Task status: " + snapshot.getStatus());
+                    if (!"completed".equals(snapshot.getStatus())) {
+                        return failedFuture(new IOException("Task " + snapshot.getTaskId() + " finished with status: " + snapshot.getStatus()));
+                    }
+                    String taskId = snapshot.getTaskId();
+                    return state.track(resolveMediaAsync(snapshot, deadline))
+                            .thenCompose(media -> {
+                                listener.accept(new GenerationEvent.MediaResolved(taskId, media.getDownloadUrl()));
+                                return state.track(download.fetch(media.getDownloadUrl(), media));
+                            });
+                });
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ScheduledFuture<?> timer = !deadline.isBounded() ? null : POLL_SCHEDULER.schedule(
+                () -> result.completeExceptionally(new DeadlineExceededException("Generation did not finish within its deadline")),
+                Math.max(deadline.remainingNanos(), 0), TimeUnit.NANOSECONDS);
+        pipeline.whenComplete((value, error) -> {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (!pipeline.isDone()) {
+                state.abandon();
             }
+        });
+        return result;
+    }
 
-            String responseBodyString = response.body().string();
-            JSONObject responseBody = new JSONObject(responseBodyString);
-            System.out.println("Start Generation...");
-            return responseBody.getJSONObject("data").getJSONObject("createGenerationTask").getString("id");
+    /**
+     * Waits for a free slot for a new server-side task.
+     * 
+     * @param priority The lane of the request.
+     * @return The granted slot.
+     * @throws IOException If the thread is interrupted while waiting.
+     */
+    private SubmissionQueue.Slot acquireSlot(Priority priority) throws IOException {
+        CompletableFuture<SubmissionQueue.Slot> request = submissions.acquire(priority);
+        try {
+            return request.get();
+        } catch (InterruptedException e) {
+            if (!request.cancel(false)) {
+                request.join().release();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a submission slot");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
         }
     }
 
     /**
-     * Downloads the generated image using the mediaId.
+     * Creates a poll observer that reports every change of the task status.
      * 
-     * @param mediaId The media ID of the image to download.
-     * @throws IOException If an error occurs during the request.
+     * @param listener Receives the {@link GenerationEvent.StatusChanged} events.
+     * @return The observer.
      */
-    private void downloadGeneratedImage(String mediaId) throws IOException {
-        String graphqlQuery = "query getMediaById($id: String!) { media(id: $id) { urls { variant url } } }";
+    private static Consumer<TaskSnapshot> statusListener(Consumer<GenerationEvent> listener) {
+        AtomicReference<String> lastStatus = new AtomicReference<>();
+        return snapshot -> {
+            String previous = lastStatus.getAndSet(snapshot.getStatus());
+            if (!snapshot.getStatus().equals(previous)) {
+                listener.accept(new GenerationEvent.StatusChanged(snapshot.getTaskId(), snapshot.getStatus()));
+            }
+        };
+    }
 
-        JSONObject variables = new JSONObject();
-        variables.put("id", mediaId);
+    /**
+     * Resolves the media ID and the download URL of a completed task.
+     * Usually the status check that saw the task completed has already fetched
+     * them, and nothing is sent. Otherwise, for a task that finished earlier than
+     * predicted, one query fetches the outputs and the media URLs of the task
+     * together; if it fails or returns no URL, the separate outputs and media
+     * queries are used instead.
+     * 
+     * @param snapshot The final state of the task.
+     * @param deadline The time by which the generation must be finished.
+     * @return A future completed with the state of the task including its media ID and download URL.
+     */
+    private CompletableFuture<TaskSnapshot> resolveMediaAsync(TaskSnapshot snapshot, Deadline deadline) {
+        if (snapshot.getDownloadUrl() != null) {
+            return CompletableFuture.completedFuture(snapshot);
+        }
+        String taskId = snapshot.getTaskId();
+        CompletableFuture<JSONObject> sent = executeAsync(sendRequest(GET_COMPLETED_TASK, "{\"id\":" + JSONObject.quote(taskId) + "}"), deadline);
+        CompletableFuture<TaskSnapshot> fused = forwardCancel(sent
+                .thenApply(responseBody -> TaskSnapshot.parse(taskId, responseBody.getJSONObject("data").getJSONObject("task")))
+                .handle((media, error) -> media), sent);
+        return thenComposeCancellable(fused, media -> {
+            if (media != null && media.getDownloadUrl() != null) {
+                return CompletableFuture.completedFuture(media);
+            }
+            return lookUpMediaAsync(snapshot, media != null ? media.getMediaId() : snapshot.getMediaId(), deadline);
+        });
+    }
 
-        JSONObject jsonBody = new JSONObject();
-        jsonBody.put("query", graphqlQuery);
-        jsonBody.put("variables", variables);
+    /**
+     * Resolves the media of a completed task with the separate outputs and media queries.
+     * 
+     * @param snapshot The final state of the task.
+     * @param mediaId The media ID of the output if already known, or null to query the outputs.
+     * @param deadline The time by which the generation must be finished.
+     * @return A future completed with the state of the task including its media ID and download URL.
+     */
+    private CompletableFuture<TaskSnapshot> lookUpMediaAsync(TaskSnapshot snapshot, String mediaId, Deadline deadline) {
+        CompletableFuture<String> id = CompletableFuture.completedFuture(mediaId);
+        if (mediaId == null) {
+            CompletableFuture<JSONObject> outputs = executeAsync(getMediaIdRequest(snapshot.getTaskId()), deadline);
+            id = forwardCancel(outputs.thenApply(PixAIClient::parseMediaId), outputs);
+        }
+        return thenComposeCancellable(id, resolved -> {
+            CompletableFuture<JSONObject> media = executeAsync(getMediaRequest(resolved), deadline);
+            return forwardCancel(media.thenApply(responseBody -> new TaskSnapshot(snapshot.getTaskId(), snapshot.getStatus(), resolved,
+                    parseDownloadUrl(responseBody))), media);
+        });
+    }
 
-        Request request = sendRequest(jsonBody);
+    /**
+     * Creates a task to generate an image using the PixAI API.
+     * 
+     * @param generationRequest The generation request.
+     * @return The ID of the generation task.
+     * @throws IOException If an error occurs during the request.
+     */
+    private String createGenerationTask(GenerationRequest generationRequest) throws IOException {
+        JSONObject responseBody = await(executeAsync(createGenerationTaskRequest(generationRequest)), "the task to be created");
+        System.out.println("Start Generation...");
+        return responseBody.getJSONObject("data").getJSONObject("createGenerationTask").getString("id");
+    }
 
-        Response response = client.newCall(request).execute();
-        if (!response.isSuccessful()) {
-            throw new IOException("Unexpected code " + response + " with message: " + response.body().string());
+    /**
+     * Checks that a generation request has a prompt.
+     * 
+     * @param request The generation request.
+     */
+    private static void requirePrompt(GenerationRequest request) {
+        if (request.getPrompt() == null) {
+            throw new IllegalArgumentException("GenerationRequest has no prompt");
         }
+    }
+
+    /**
+     * Builds the createGenerationTask mutation.
+     * The parameters are spliced in as the JSON text pre-serialized by the request.
+     * 
+     * @param request The generation request.
+     * @return The HTTP request.
+     */
+    TransportRequest createGenerationTaskRequest(GenerationRequest request) {
+        return sendRequest(CREATE_GENERATION_TASK, "{\"parameters\":" + request.toParametersJson() + "}");
+    }
 
-        String responseBodyString = response.body().string();
-        JSONObject responseBody = new JSONObject(responseBodyString);
+    /**
+     * Builds the getMediaById query.
+     * 
+     * @param mediaId The media ID of the image.
+     * @return The HTTP request.
+     */
+    private TransportRequest getMediaRequest(String mediaId) {
+        return sendRequest(GET_MEDIA_BY_ID, "{\"id\":" + JSONObject.quote(mediaId) + "}");
+    }
 
+    /**
+     * Extracts the first download URL from a getMediaById response.
+     * 
+     * @param responseBody The parsed response of the getMediaById query.
+     * @return The URL of the image, or null if the media has no URLs.
+     */
+    private static String parseDownloadUrl(JSONObject responseBody) {
         JSONArray urls = responseBody.getJSONObject("data").getJSONObject("media").getJSONArray("urls");
-        String downloadUrl = null;
 
         for (int i = 0; i < urls.length(); i++) {
             JSONObject urlObj = urls.getJSONObject(i);
             if (urlObj.has("url")) {
-                downloadUrl = urlObj.getString("url");
-                break;
+                return urlObj.getString("url");
             }
         }
-
-        downloadFile(downloadUrl);
+        return null;
     }
 
     /**
      * Sends a GraphQL request to the PixAI API.
+     * Only the variables are serialized per call; the URL, the headers and the
+     * encoded query come from precomputed templates.
      * 
-     * @param jsonBody The JSON body of the request.
+     * @param operation The GraphQL operation.
+     * @param variablesJson The JSON text of the variables.
      * @return The constructed HTTP request.
      */
-    private Request sendRequest(JSONObject jsonBody) {
-        RequestBody requestBody = RequestBody.create(
-                MediaType.parse("application/json; charset=utf-8"),
-                jsonBody.toString()
-        );
-
-        return new Request.Builder()
-                .url("https://api.pixai.art/graphql")
-                .post(requestBody)
-                .addHeader("Authorization", "Bearer " + apiKey)
-                .build();
+    private TransportRequest sendRequest(GraphqlOperation operation, String variablesJson) {
+        return apiRequest.withBody(JSON_CONTENT_TYPE, operation.body(variablesJson));
     }
 
     /**
      * Polls the status of the image generation task.
+     * The task is tracked by the client-wide poller; the calling thread only waits
+     * for the final status.
      * 
      * @param taskId The ID of the generation task.
-     * @return The status of the task ("completed", "failed", "cancelled").
+     * @param parameterClass The parameter class of the generation, used to time the status checks.
+     * @return The final state of the task, with status "completed", "failed" or "cancelled".
      * @throws IOException If an error occurs during the request.
      */
-    private String pollTaskStatus(String taskId) throws IOException {
-        String graphqlQuery = "query getTaskById($id: ID!) { task(id: $id) { id status } }";
+    private TaskSnapshot pollTaskStatus(String taskId, String parameterClass) throws IOException {
+        return await(watchTask(taskId, parameterClass, null, Deadline.NONE), "task " + taskId);
+    }
 
-        JSONObject variables = new JSONObject();
-        variables.put("id", taskId);
+    /**
+     * Waits for a future of the asynchronous pipeline on the calling thread.
+     * Interrupting the thread cancels the future.
+     * 
+     * @param future The future to wait for.
+     * @param description What is waited for, used in the message of the interruption.
+     * @return The value of the future.
+     * @throws IOException If the future failed with an IOException or the thread is interrupted.
+     */
+    static <T> T await(CompletableFuture<T> future, String description) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + description);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
 
-        JSONObject jsonBody = new JSONObject();
-        jsonBody.put("query", graphqlQuery);
-        jsonBody.put("variables", variables);
+    /**
+     * Starts tracking a task with the client-wide poller, opening the status
+     * subscription first when subscriptions are enabled. The subscription is held
+     * until the task is final, so it closes once no task is in flight.
+     * 
+     * @param taskId The ID of the generation task.
+     * @param parameterClass The parameter class of the generation, used to time the status checks.
+     * @param observer Receives every state returned by a status check of the task, may be null.
+     * @param deadline The time by which the task must be final.
+     * @return A future completed with the final state of the task.
+     */
+    private CompletableFuture<TaskSnapshot> watchTask(String taskId, String parameterClass, Consumer<TaskSnapshot> observer,
+            Deadline deadline) {
+        TaskSubscription current;
+        synchronized (this) {
+            current = subscription;
+        }
+        if (current == null) {
+            return poller.watch(taskId, parameterClass, observer, deadline);
+        }
+        current.acquire();
+        CompletableFuture<TaskSnapshot> watched = poller.watch(taskId, parameterClass, observer, deadline);
+        watched.whenComplete((snapshot, error) -> current.release());
+        return watched;
+    }
 
-        while (true) {
-            Request request = new Request.Builder()
-                    .url("https://api.pixai.art/graphql")
-                    .post(RequestBody.create(MediaType.parse("application/json"), jsonBody.toString()))
-                    .addHeader("Authorization", "Bearer " + apiKey)
-                    .build();
+    /**
+     * Fetches the current state of several tasks with a single request, without
+     * blocking a thread. Each task is queried through an aliased field
+     * ({@code t0: task(id: $id0) { id status }}, ...) of one GraphQL document.
+     * Used by the client-wide poller for every status check.
+     * <p>
+     * For tasks that have probably finished, the field also selects the outputs
+     * and the media URLs through {@code @include(if: $m0)}, so the check that sees
+     * a task completed usually brings its download URL along and completion costs
+     * no further round trip. If the server rejects that selection, the batch is
+     * checked again without it and later checks leave the media out.
+     * 
+     * @param taskIds The IDs of the generation tasks.
+     * @param likelyCompleted The IDs of the tasks whose media should be fetched as well.
+     * @return A future completed with the current state of each task found, keyed by task ID.
+     */
+    private CompletableFuture<Map<String, TaskSnapshot>> fetchTaskStatuses(List<String> taskIds, Set<String> likelyCompleted) {
+        if (!mediaInPolls || likelyCompleted.isEmpty()) {
+            return fetchTaskStatuses(taskIds, likelyCompleted, false);
+        }
+        return fetchTaskStatuses(taskIds, likelyCompleted, true)
+                .handle((statuses, error) -> {
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(statuses);
+                    }
+                    return fetchTaskStatuses(taskIds, likelyCompleted, false).thenApply(plain -> {
+                        mediaInPolls = false;
+                        LOGGER.log(Level.FINE, "Status checks no longer select the media", error);
+                        return plain;
+                    });
+                })
+                .thenCompose(statuses -> statuses);
+    }
 
-            Response response = client.newCall(request).execute();
-            if (!response.isSuccessful()) {
-                throw new IOException("Unexpected code " + response + " with message: " + response.body().string());
+    /**
+     * Sends one aliased status query for a batch of tasks.
+     * 
+     * @param taskIds The IDs of the generation tasks.
+     * @param likelyCompleted The IDs of the tasks whose media should be fetched as well.
+     * @param withMedia True to use the document that can select the media.
+     * @return A future completed with the current state of each task found, keyed by task ID.
+     */
+    private CompletableFuture<Map<String, TaskSnapshot>> fetchTaskStatuses(List<String> taskIds, Set<String> likelyCompleted,
+            boolean withMedia) {
+        return executeAsync(taskStatusesRequest(taskIds, likelyCompleted, withMedia)).thenApply(responseBody -> {
+            JSONObject data = responseBody.getJSONObject("data");
+            Map<String, String> errors = aliasErrors(responseBody);
+            Map<String, TaskSnapshot> statuses = new HashMap<>();
+            for (int i = 0; i < taskIds.size(); i++) {
+                JSONObject task = data.optJSONObject("t" + i);
+                if (task != null) {
+                    statuses.put(taskIds.get(i), TaskSnapshot.parse(taskIds.get(i), task));
+                } else if (errors.containsKey("t" + i)) {
+                    statuses.put(taskIds.get(i), TaskSnapshot.failed(taskIds.get(i), errors.get("t" + i)));
+                }
             }
+            return statuses;
+        });
+    }
 
-            JSONObject responseBody = new JSONObject(response.body().string());
-            String status = responseBody.getJSONObject("data").getJSONObject("task").getString("status");
-
-            if ("completed".equals(status) || "failed".equals(status) || "cancelled".equals(status)) {
-                return status;
+    /**
+     * Builds the aliased status query for a batch of tasks.
+     * 
+     * @param taskIds The IDs of the generation tasks.
+     * @param likelyCompleted The IDs of the tasks whose media should be fetched as well.
+     * @param withMedia True to use the document that can select the media.
+     * @return The HTTP request.
+     */
+    TransportRequest taskStatusesRequest(List<String> taskIds, Set<String> likelyCompleted, boolean withMedia) {
+        StringBuilder variables = new StringBuilder("{");
+        for (int i = 0; i < taskIds.size(); i++) {
+            if (i > 0) {
+                variables.append(',');
             }
-
-            try {
-                Thread.sleep(5000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                e.printStackTrace();
+            variables.append("\"id").append(i).append("\":").append(JSONObject.quote(taskIds.get(i)));
+            if (withMedia) {
+                variables.append(",\"m").append(i).append("\":").append(likelyCompleted.contains(taskIds.get(i)));
             }
         }
+        variables.append('}');
+
+        GraphqlOperation operation = withMedia
+                ? GET_TASKS_WITH_MEDIA_BY_ID.computeIfAbsent(taskIds.size(), size -> getTasksByIdOperation(size, true))
+                : GET_TASKS_BY_ID.computeIfAbsent(taskIds.size(), size -> getTasksByIdOperation(size, false));
+        return sendRequest(operation, variables.toString());
     }
 
     /**
-     * Retrieves the media ID (mediaId) from the API response for the generation task.
+     * Collects the GraphQL errors reported for single fields of an aliased query.
      * 
-     * @param taskId The ID of the generation task.
-     * @return The media ID (mediaId).
-     * @throws IOException If an error occurs during the request.
+     * @param responseBody The parsed response.
+     * @return The first error message per alias, keyed by alias.
      */
-    private String getMediaId(String taskId) throws IOException {
-        String graphqlQuery = "query getTaskById($id: ID!) { task(id: $id) { outputs } }";
-
-        JSONObject variables = new JSONObject();
-        variables.put("id", taskId);
-
-        JSONObject jsonBody = new JSONObject();
-        jsonBody.put("query", graphqlQuery);
-        jsonBody.put("variables", variables);
-
-        Request request = sendRequest(jsonBody);
+    private static Map<String, String> aliasErrors(JSONObject responseBody) {
+        JSONArray errors = responseBody.optJSONArray("errors");
+        if (errors == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> messages = new HashMap<>();
+        for (int i = 0; i < errors.length(); i++) {
+            JSONObject error = errors.optJSONObject(i);
+            JSONArray path = error == null ? null : error.optJSONArray("path");
+            if (path != null && path.length() > 0) {
+                messages.putIfAbsent(path.optString(0), error.optString("message", "unknown error"));
+            }
+        }
+        return messages;
+    }
 
-        Response response = client.newCall(request).execute();
-        if (!response.isSuccessful()) {
-            throw new IOException("Unexpected code " + response + " with message: " + response.body().string());
+    /**
+     * Builds the aliased status query for a batch of tasks.
+     * 
+     * @param size The number of tasks in the batch.
+     * @param withMedia True to select the outputs and media URLs of each task when its
+     *        {@code $m} variable is true.
+     * @return The operation.
+     */
+    private static GraphqlOperation getTasksByIdOperation(int size, boolean withMedia) {
+        StringBuilder declarations = new StringBuilder();
+        StringBuilder fields = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                declarations.append(", ");
+            }
+            declarations.append("$id").append(i).append(": ID!");
+            fields.append(" t").append(i).append(": task(id: $id").append(i).append(") { id status");
+            if (withMedia) {
+                declarations.append(", $m").append(i).append(": Boolean!");
+                fields.append(" outputs @include(if: $m").append(i).append(")")
+                        .append(" media @include(if: $m").append(i).append(") { urls { variant url } }");
+            }
+            fields.append(" }");
         }
+        return new GraphqlOperation("query getTasksById(" + declarations + ") {" + fields + " }");
+    }
 
-        String responseBodyString = response.body().string();
-        JSONObject responseBody = new JSONObject(responseBodyString);
+    /**
+     * Builds the task outputs query.
+     * 
+     * @param taskId The ID of the generation task.
+     * @return The HTTP request.
+     */
+    private TransportRequest getMediaIdRequest(String taskId) {
+        return sendRequest(GET_TASK_OUTPUTS, "{\"id\":" + JSONObject.quote(taskId) + "}");
+    }
 
+    /**
+     * Extracts the media ID from a task outputs response.
+     * 
+     * @param responseBody The parsed response of the task outputs query.
+     * @return The media ID (mediaId).
+     */
+    private static String parseMediaId(JSONObject responseBody) {
         JSONObject outputs = responseBody.getJSONObject("data").getJSONObject("task").getJSONObject("outputs");
         String mediaId = outputs.optString("mediaId", null);
         if (mediaId == null) {
@@ -231,29 +894,435 @@ public class PixAIClient {
      * Downloads a file from the specified URL and saves it to the local disk.
      * 
      * @param downloadUrl The URL to download the file from.
+     * @param mediaId The media ID of the image, used to find a partial download; may be null.
+     * @return The path of the saved file.
      * @throws IOException If an error occurs during the request or saving the file.
      */
-    private void downloadFile(String downloadUrl) throws IOException {
-        Request request = new Request.Builder()
-                .url(downloadUrl)
-                .addHeader("Authorization", "Bearer " + apiKey)
+    private Path downloadFile(String downloadUrl, String mediaId) throws IOException {
+        return await(downloadFileAsync(downloadUrl, mediaId, null, event -> { }, Deadline.NONE), "the download of " + downloadUrl);
+    }
+
+    /**
+     * Downloads a file from the specified URL asynchronously and saves it to the local disk.
+     * When segmented downloads are enabled and the media host announces byte ranges,
+     * files above the threshold are fetched as several concurrent ranges.
+     * The image is written to a {@code .part} file named after the media, which is
+     * resumed after transient failures and by later downloads of the same media,
+     * and renamed to its timestamped name once complete.
+     * 
+     * @param downloadUrl The URL to download the file from.
+     * @param mediaId The media ID of the image, or null to identify the partial file by URL.
+     * @param taskId The ID of the generation task the image belongs to.
+     * @param listener Receives the {@link GenerationEvent.DownloadProgress} events.
+     * @param deadline The time by which the download must be finished.
+     * @return A future completed with the path of the saved file.
+     */
+    private CompletableFuture<Path> downloadFileAsync(String downloadUrl, String mediaId, String taskId, Consumer<GenerationEvent> listener,
+            Deadline deadline) {
+        if (downloadUrl == null) {
+            return failedFuture(new IOException("Media has no download URL"));
+        }
+
+        TransportRequest request = TransportRequest.builder(downloadUrl)
+                .header("Authorization", authorization)
+                .timeout(deadline.remaining())
                 .build();
+        Path part;
+        try {
+            part = partFile(downloadUrl, mediaId);
+        } catch (IOException e) {
+            return failedFuture(e);
+        }
+        if (diskWriter == null) {
+            return thenComposeCancellable(downloadPartAsync(request, part, taskId, listener, deadline), this::saveImage);
+        }
+        // The place in the disk writer is taken before the download starts, so completed files cannot pile up in front of it.
+        return thenComposeCancellable(diskWriter.reserve(), place -> {
+            CompletableFuture<Path> downloaded = downloadPartAsync(request, part, taskId, listener, deadline);
+            downloaded.whenComplete((file, error) -> {
+                if (error != null) {
+                    place.release();
+                }
+            });
+            return thenComposeCancellable(downloaded, file ->
+                    place.commit(file, ResumableDownload.metaFile(file), this::newImageFile).thenApply(this::imageSaved));
+        });
+    }
 
-        Response response = client.newCall(request).execute();
-        if (!response.isSuccessful()) {
-            throw new IOException("Unexpected code " + response + " with message: " + response.body().string());
+    /**
+     * Downloads a file into its partial file, in ranges when segmented downloads
+     * are enabled and the media host announces byte ranges for a large file.
+     * 
+     * @param request The GET request of the file.
+     * @param part The partial file.
+     * @param taskId The ID of the generation task the image belongs to.
+     * @param listener Receives the {@link GenerationEvent.DownloadProgress} events.
+     * @param deadline The time by which the download must be finished.
+     * @return A future completed with the complete partial file.
+     */
+    private CompletableFuture<Path> downloadPartAsync(TransportRequest request, Path part, String taskId, Consumer<GenerationEvent> listener,
+            Deadline deadline) {
+        if (downloadSegments < 2) {
+            return downloadSingleAsync(request, part, taskId, listener, deadline);
         }
 
-        byte[] imageBytes = response.body().bytes();
+        CompletableFuture<Long> probe = RangedDownload.probe(mediaTransport, request);
+        return thenComposeCancellable(forwardCancel(probe.exceptionally(error -> -1L), probe), length -> {
+            if (length <= 0 || length < segmentThreshold) {
+                return downloadSingleAsync(request, part, taskId, listener, deadline);
+            }
+            ProgressThrottle progress = new ProgressThrottle(taskId, listener);
+            CompletableFuture<Void> fetched = RangedDownload.fetch(mediaTransport, request.withTimeout(deadline.remaining()), length,
+                    downloadSegments, part, bytes -> progress.update(bytes, length), copier);
+            return forwardCancel(fetched.thenApply(ignored -> part), fetched);
+        });
+    }
+
+    /**
+     * Downloads an image and streams it into a sink.
+     * Sinks cannot take back written bytes in general, so the download is not
+     * resumed or split into ranges; a download that fails before the output is
+     * committed aborts it, while a failed commit is left to the output to clean up.
+     * 
+     * @param downloadUrl The URL to download the image from.
+     * @param snapshot The final state of the task.
+     * @param sink The destination of the image.
+     * @param listener Receives the {@link GenerationEvent.DownloadProgress} events.
+     * @param deadline The time by which the download must be finished.
+     * @return A future completed with the result of the sink. Cancelling the future
+     *         stops the download and aborts the output of the sink.
+     */
+    private <T> CompletableFuture<T> downloadToSinkAsync(String downloadUrl, TaskSnapshot snapshot, ImageSink<T> sink,
+            Consumer<GenerationEvent> listener, Deadline deadline) {
+        if (downloadUrl == null) {
+            return failedFuture(new IOException("Media has no download URL"));
+        }
+        TransportRequest request = TransportRequest.builder(downloadUrl)
+                .header("Authorization", authorization)
+                .timeout(deadline.remaining())
+                .build();
+        String taskId = snapshot.getTaskId();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        CompletableFuture<TransportResponse> sent = hedgedDownloads != null ? hedgedDownloads.send(request) : mediaTransport.send(request);
+        CompletableFuture<T> result = sent.thenApply(response -> {
+            try (TransportResponse r = response) {
+                if (!r.isSuccessful()) {
+                    throw new IOException("Unexpected code " + r + " with message: " + r.bodyString());
+                }
+                long contentLength = r.contentLength();
+                ImageSink.Output<T> output = sink.open(new ImageInfo(taskId, snapshot.getMediaId(), downloadUrl,
+                        r.header("Content-Type"), contentLength));
+                long[] written = {0};
+                try {
+                    ProgressThrottle progress = new ProgressThrottle(taskId, listener);
+                    copier.copy(r.bodyChannel(), output, bytes -> {
+                        if (cancelled.get()) {
+                            throw new InterruptedIOException("Download cancelled");
+                        }
+                        written[0] += bytes;
+                        progress.update(written[0], contentLength);
+                    });
+                    progress.flush();
+                    if (contentLength >= 0 && written[0] != contentLength) {
+                        throw new IOException("Download ended after " + written[0] + " of " + contentLength + " bytes");
+                    }
+                } catch (IOException | RuntimeException e) {
+                    output.abort();
+                    throw e;
+                }
+                T value = output.commit();
+                LOGGER.fine(() -> "Image delivered: " + downloadUrl);
+                return value;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                cancelled.set(true);
+                sent.cancel(false);
+            }
+        });
+        return result;
+    }
 
+    /**
+     * Downloads a file over a single stream into its partial file, resuming after
+     * transient failures.
+     * 
+     * @param request The GET request of the file.
+     * @param part The partial file.
+     * @param taskId The ID of the generation task the image belongs to.
+     * @param listener Receives the {@link GenerationEvent.DownloadProgress} events.
+     * @param deadline The time by which the download must be finished; no resume attempt is made after it.
+     * @return A future completed with the complete partial file.
+     */
+    private CompletableFuture<Path> downloadSingleAsync(TransportRequest request, Path part, String taskId, Consumer<GenerationEvent> listener,
+            Deadline deadline) {
+        ProgressThrottle progress = new ProgressThrottle(taskId, listener);
+        ResumableDownload download = new ResumableDownload(mediaTransport,
+                hedgedDownloads != null ? hedgedDownloads::send : mediaTransport::send,
+                request, part, downloadRetries, progress, copier, deadline);
+        CompletableFuture<Path> downloaded = download.run();
+        return forwardCancel(downloaded.thenApply(path -> {
+            progress.flush();
+            return path;
+        }), downloaded);
+    }
+
+    /**
+     * Moves a completed download to a new timestamped name in the output
+     * directory. Durable downloads are saved by the disk writer instead.
+     * 
+     * @param part The completed partial file.
+     * @return A future completed with the path of the saved image.
+     */
+    private CompletableFuture<Path> saveImage(Path part) {
+        Path meta = ResumableDownload.metaFile(part);
+        try {
+            Path file = ResumableDownload.moveIntoPlace(part, newImageFile());
+            Files.deleteIfExists(meta);
+            return CompletableFuture.completedFuture(imageSaved(file));
+        } catch (IOException e) {
+            return failedFuture(e);
+        }
+    }
+
+    /**
+     * Reports a saved image.
+     * 
+     * @param file The path of the image.
+     * @return The path of the image.
+     */
+    private Path imageSaved(Path file) {
+        System.out.println("Image downloaded: " + saveFilePath + "/" + file.getFileName());
+        return file;
+    }
+
+    /**
+     * Returns the partial file of a download in the output directory, creating the directory if needed.
+     * The name depends only on the media, so a later download of the same image finds it.
+     * 
+     * @param downloadUrl The URL of the image.
+     * @param mediaId The media ID of the image, or null to derive the name from the URL.
+     * @return The path of the partial file.
+     * @throws IOException If the output directory cannot be created.
+     */
+    private Path partFile(String downloadUrl, String mediaId) throws IOException {
+        String key = mediaId != null
+                ? mediaId.replaceAll("[^A-Za-z0-9_-]", "_")
+                : "url-" + Integer.toHexString(downloadUrl.hashCode());
+        Files.createDirectories(Paths.get(saveFilePath));
+        return Paths.get(saveFilePath, "pixai-" + key + ResumableDownload.PART_SUFFIX);
+    }
+
+    /**
+     * Creates the output directory if needed and reserves the timestamped path of a new image.
+     * The file is created empty, so two images completed in the same second get
+     * different names ("_2", "_3", ...) instead of overwriting each other.
+     * 
+     * @return The path of the image file.
+     * @throws IOException If the output directory or the file cannot be created.
+     */
+    private Path newImageFile() throws IOException {
         String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-        String fileName = "picture_PixAI_" + timeStamp + ".png";
         Files.createDirectories(Paths.get(saveFilePath));
+        for (int attempt = 1; ; attempt++) {
+            String fileName = "picture_PixAI_" + timeStamp + (attempt > 1 ? "_" + attempt : "") + ".png";
+            try {
+                return Files.createFile(Paths.get(saveFilePath, fileName));
+            } catch (FileAlreadyExistsException e) {
+                // Taken by an image completed in the same second; try the next suffix.
+            }
+        }
+    }
 
-        try (FileOutputStream fos = new FileOutputStream(Paths.get(saveFilePath, fileName).toString())) {
-            fos.write(imageBytes);
-            System.out.println("Image downloaded: " + saveFilePath + "/" + fileName);
+    /**
+     * Executes a GraphQL request asynchronously, limited to the remaining time of a deadline.
+     * 
+     * @param request The HTTP request to execute.
+     * @param deadline The time by which the request must be finished.
+     * @return A future completed with the parsed JSON response.
+     */
+    private CompletableFuture<JSONObject> executeAsync(TransportRequest request, Deadline deadline) {
+        if (!deadline.isBounded()) {
+            return executeAsync(request);
+        }
+        if (deadline.isExpired()) {
+            return failedFuture(new DeadlineExceededException("Deadline exceeded before the request was sent"));
+        }
+        return executeAsync(request.withTimeout(deadline.remaining()));
+    }
+
+    /**
+     * Cancels a generation task on the server, so it stops using a GPU slot.
+     * Callers waiting for the task through this client see the status "cancelled".
+     * 
+     * @param taskId The ID of the generation task.
+     * @throws IOException If an error occurs during the request.
+     */
+    public void cancelTask(String taskId) throws IOException {
+        await(cancelTaskAsync(taskId), "the cancellation of task " + taskId);
+    }
+
+    /**
+     * Cancels a generation task on the server asynchronously, so it stops using a GPU slot.
+     * Callers waiting for the task through this client see the status "cancelled"
+     * once the server has accepted the cancellation.
+     * 
+     * @param taskId The ID of the generation task.
+     * @return A future completed once the server has accepted the cancellation.
+     */
+    public CompletableFuture<Void> cancelTaskAsync(String taskId) {
+        if (taskId == null) {
+            return failedFuture(new IllegalArgumentException("taskId must not be null"));
         }
+        return executeAsync(sendRequest(CANCEL_GENERATION_TASK, "{\"id\":" + JSONObject.quote(taskId) + "}"))
+                .thenApply(responseBody -> {
+                    if (responseBody.has("errors")) {
+                        throw new CompletionException(new IOException("Could not cancel task " + taskId + ": " + responseBody.get("errors")));
+                    }
+                    poller.onStatus(taskId, "cancelled");
+                    return null;
+                });
+    }
+
+    /**
+     * Cancels a generation task on the server in the background, after the local
+     * work for it was abandoned; a failure is only reported.
+     * 
+     * @param taskId The ID of the generation task.
+     */
+    private void cancelGenerationTask(String taskId) {
+        cancelTaskAsync(taskId)
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        LOGGER.log(Level.WARNING, "Could not cancel task " + taskId, error);
+                    } else {
+                        LOGGER.fine(() -> "Task cancelled: " + taskId);
+                    }
+                });
+    }
+
+    /**
+     * Executes a GraphQL request asynchronously through the transport.
+     * 
+     * @param request The HTTP request to execute.
+     * @return A future completed with the parsed JSON response. Cancelling it
+     *         cancels the call.
+     */
+    private CompletableFuture<JSONObject> executeAsync(TransportRequest request) {
+        CompletableFuture<TransportResponse> sent = transport.send(request);
+        return forwardCancel(sent.thenApply(response -> {
+            try {
+                String responseBodyString = response.bodyString();
+                if (!response.isSuccessful()) {
+                    throw new IOException("Unexpected code " + response + " with message: " + responseBodyString);
+                }
+                return new JSONObject(responseBodyString);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }), sent);
+    }
+
+    /**
+     * Creates the executor used by {@link #runAll(Collection, int)}.
+     * Uses a virtual thread per task on runtimes that provide them, since each
+     * generation spends nearly all of its time waiting on the network, and a
+     * fixed pool of daemon threads otherwise.
+     * 
+     * @param threads The number of platform threads of the fallback pool.
+     * @return The executor for the batch.
+     */
+    private static ExecutorService newBatchExecutor(int threads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "pixai-batch");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Creates a future that is already completed with the given exception.
+     * 
+     * @param error The exception to complete the future with.
+     * @return The failed future.
+     */
+    private static <T> CompletableFuture<T> failedFuture(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /**
+     * Cancels a future when a future derived from it is cancelled. Cancelling a
+     * dependent stage of a CompletableFuture does not reach its source, so the
+     * call or the copy behind the source would go on otherwise.
+     * 
+     * @param dependent The derived future handed to the caller.
+     * @param source The future it was derived from.
+     * @return The derived future.
+     */
+    private static <T> CompletableFuture<T> forwardCancel(CompletableFuture<T> dependent, CompletableFuture<?> source) {
+        dependent.whenComplete((value, error) -> {
+            if (dependent.isCancelled()) {
+                source.cancel(false);
+            }
+        });
+        return dependent;
+    }
+
+    /**
+     * Starts a stage once a future has completed, like {@code thenCompose}, but
+     * cancelling the returned future cancels the source while it is running and
+     * the started stage afterwards.
+     * 
+     * @param source The future to wait for.
+     * @param next Starts the stage from the value of the source.
+     * @return A future completed with the result of the stage.
+     */
+    private static <T, U> CompletableFuture<U> thenComposeCancellable(CompletableFuture<T> source,
+            Function<? super T, ? extends CompletableFuture<U>> next) {
+        CompletableFuture<U> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<?>> current = new AtomicReference<>(source);
+        source.whenComplete((value, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+                return;
+            }
+            CompletableFuture<U> stage;
+            try {
+                stage = next.apply(value);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            current.set(stage);
+            if (result.isCancelled()) {
+                stage.cancel(false);
+            }
+            stage.whenComplete((staged, stageError) -> {
+                if (stageError != null) {
+                    result.completeExceptionally(stageError instanceof CompletionException && stageError.getCause() != null
+                            ? stageError.getCause() : stageError);
+                } else {
+                    result.complete(staged);
+                }
+            });
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                current.get().cancel(false);
+            }
+        });
+        return result;
     }
 
     /**
@@ -265,13 +1334,120 @@ public class PixAIClient {
         this.saveFilePath = saveFilePath;
     }
 
+    /**
+     * Sets the maximum number of tasks whose status is checked by a single request.
+     * Due tasks are combined into one aliased GraphQL query, which keeps the request
+     * count low when many generations are in flight.
+     * 
+     * @param pollBatchSize The batch size, at least 1.
+     */
+    public void setPollBatchSize(int pollBatchSize) {
+        poller.setBatchSize(pollBatchSize);
+    }
+
+    /**
+     * Sets the maximum number of generation tasks this client keeps running on the server.
+     * Further requests wait in a queue with one lane per {@link Priority}, and the
+     * waiting request of the highest lane is submitted first when a task finishes.
+     * 
+     * @param maxActiveTasks The maximum number of concurrent server-side tasks, at least 1.
+     */
+    public void setMaxActiveTasks(int maxActiveTasks) {
+        submissions.setMaxActive(maxActiveTasks);
+    }
+
+    /**
+     * Sets the guaranteed share of the submissions for each lane below
+     * {@link Priority#INTERACTIVE}, so queued bulk work keeps moving while
+     * interactive requests jump ahead. The default is 0.1.
+     * 
+     * @param minimumLaneShare The share, between 0 and 1.
+     */
+    public void setMinimumLaneShare(double minimumLaneShare) {
+        submissions.setMinimumShare(minimumLaneShare);
+    }
+
+    /**
+     * Enables or disables push-based task completion.
+     * When enabled, the client keeps one WebSocket subscription to the PixAI API
+     * while tasks are in flight and completes tasks as soon as the server reports
+     * a final status; polling drops to a rare safety check once the server has
+     * delivered on the subscription and resumes its regular interval automatically
+     * if the socket drops. The socket is closed after 30 seconds without tasks.
+     * 
+     * @param enableSubscriptions Enable or disable the subscription.
+     */
+    public synchronized void setSubscriptionsEnabled(boolean enableSubscriptions) {
+        if (enableSubscriptions && subscription == null) {
+            TaskSubscription.Listener listener = new TaskSubscription.Listener() {
+                @Override
+                public void onTaskUpdated(String taskId, String status) {
+                    poller.onStatus(taskId, status);
+                }
+
+                @Override
+                public void onActiveChanged(boolean active) {
+                    poller.setPushActive(active);
+                }
+            };
+            subscription = new TaskSubscription(URI.create(subscriptionUrl), apiKey, listener, POLL_SCHEDULER);
+        } else if (!enableSubscriptions && subscription != null) {
+            subscription.stop();
+            subscription = null;
+        }
+    }
+
+    /**
+     * Releases the threads and the connection owned by the client: stops the disk
+     * writer threads of durable downloads and closes the task subscription.
+     * Images already handed to a disk writer are still written. Transports passed
+     * to the builder and the shared poll scheduler are left running. The client
+     * must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (diskWriter != null) {
+            diskWriter.close();
+        }
+        setSubscriptionsEnabled(false);
+    }
+
+    /**
+     * Sets the WebSocket endpoint used for task subscriptions.
+     * Takes effect the next time subscriptions are enabled.
+     * 
+     * @param subscriptionUrl The WebSocket URL, for example "wss://gw.pixai.art/graphql".
+     */
+    public synchronized void setSubscriptionUrl(String subscriptionUrl) {
+        this.subscriptionUrl = subscriptionUrl;
+    }
+
+    /**
+     * Returns the settings used by {@link #run(String)} and {@link #runAsync(String)},
+     * as configured by the setters of this client.
+     * 
+     * @return The default generation request, without a prompt.
+     */
+    public GenerationRequest getDefaults() {
+        return defaults;
+    }
+
+    /**
+     * Replaces the settings used by {@link #run(String)} and {@link #runAsync(String)}.
+     * 
+     * @param defaults The default generation request; its prompt is ignored.
+     */
+    public synchronized void setDefaults(GenerationRequest defaults) {
+        this.defaults = defaults;
+    }
+
     /**
      * Sets the negative prompt for image generation.
      * 
      * @param newNegativePrompt The text for the negative prompt.
      */
-    public void setNegativePrompt(String newNegativePrompt) {
-        photoConfig.put("negative_prompt", newNegativePrompt);
+    public synchronized void setNegativePrompt(String newNegativePrompt) {
+        defaults = defaults.toBuilder().negativePrompt(newNegativePrompt).build();
     }
 
     /**
@@ -279,8 +1455,8 @@ public class PixAIClient {
      * 
      * @param enableTile Enable or disable Tile.
      */
-    public void setEnableTile(boolean enableTile) {
-        photoConfig.put("enableTile", enableTile);
+    public synchronized void setEnableTile(boolean enableTile) {
+        defaults = defaults.toBuilder().enableTile(enableTile).build();
     }
 
     /**
@@ -288,8 +1464,8 @@ public class PixAIClient {
      * 
      * @param samplingSteps The number of sampling steps.
      */
-    public void setSamplingSteps(int samplingSteps) {
-        photoConfig.put("samplingSteps", samplingSteps);
+    public synchronized void setSamplingSteps(int samplingSteps) {
+        defaults = defaults.toBuilder().samplingSteps(samplingSteps).build();
     }
 
     /**
@@ -297,8 +1473,8 @@ public class PixAIClient {
      * 
      * @param cfgScale The CFG Scale value.
      */
-    public void setCfgScale(double cfgScale) {
-        photoConfig.put("cfgScale", cfgScale);
+    public synchronized void setCfgScale(double cfgScale) {
+        defaults = defaults.toBuilder().cfgScale(cfgScale).build();
     }
 
     /**
@@ -306,8 +1482,8 @@ public class PixAIClient {
      * 
      * @param upscale The upscale factor value.
      */
-    public void setUpscale(double upscale) {
-        photoConfig.put("upscale", upscale);
+    public synchronized void setUpscale(double upscale) {
+        defaults = defaults.toBuilder().upscale(upscale).build();
     }
 
     /**
@@ -315,8 +1491,8 @@ public class PixAIClient {
      * 
      * @param width The width of the image.
      */
-    public void setWidth(int width) {
-        photoConfig.put("width", width);
+    public synchronized void setWidth(int width) {
+        defaults = defaults.toBuilder().width(width).build();
     }
 
     /**
@@ -324,8 +1500,8 @@ public class PixAIClient {
      * 
      * @param height The height of the image.
      */
-    public void setHeight(int height) {
-        photoConfig.put("height", height);
+    public synchronized void setHeight(int height) {
+        defaults = defaults.toBuilder().height(height).build();
     }
 
     /**
@@ -333,8 +1509,8 @@ public class PixAIClient {
      * 
      * @param sampler The sampler type.
      */
-    public void setSampler(String sampler) {
-        photoConfig.put("sampler", sampler);
+    public synchronized void setSampler(String sampler) {
+        defaults = defaults.toBuilder().sampler(sampler).build();
     }
 
     /**
@@ -342,7 +1518,525 @@ public class PixAIClient {
      * 
      * @param modelId The model ID.
      */
-    public void setModelId(String modelId) {
-        photoConfig.put("modelId", modelId);
+    public synchronized void setModelId(String modelId) {
+        defaults = defaults.toBuilder().modelId(modelId).build();
+    }
+
+    /**
+     * Last stage of a generation, which delivers the image of the completed task.
+     * 
+     * @param <T> The type of the result of the delivered image.
+     */
+    private interface ImageDownload<T> {
+
+        /**
+         * Starts the download of the image.
+         * 
+         * @param url The download URL of the image.
+         * @param snapshot The final state of the task.
+         * @return A future completed with the result of the delivered image.
+         */
+        CompletableFuture<T> fetch(String url, TaskSnapshot snapshot);
+    }
+
+    /**
+     * Cancellation state of one asynchronous generation: the stage it is currently
+     * waiting for and the server-side task it has created.
+     */
+    private static final class RunState {
+
+        private final AtomicReference<CompletableFuture<?>> stage = new AtomicReference<>();
+        private final AtomicReference<String> task = new AtomicReference<>();
+        private volatile boolean abandoned;
+
+        /**
+         * Records the stage the generation is waiting for. A stage started after
+         * the generation was abandoned is cancelled right away.
+         * 
+         * @param future The future of the new stage.
+         * @return The future of the new stage.
+         */
+        private <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+            stage.set(future);
+            if (abandoned) {
+                future.cancel(false);
+            }
+            return future;
+        }
+
+        /**
+         * Marks the generation as abandoned by its caller and cancels the current stage.
+         */
+        private void abandon() {
+            abandoned = true;
+            CompletableFuture<?> current = stage.get();
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Builder of {@link PixAIClient}.
+     * API requests use the {@link Transport} set with {@link #transport(Transport)}, or else an
+     * {@link OkHttpTransport} on an OkHttp client built from the other settings.
+     * OkHttp is an optional dependency: applications that keep the default transport
+     * must declare {@code com.squareup.okhttp3:okhttp} themselves.
+     * The builder either configures a dedicated OkHttp client with production defaults (a pool of
+     * 32 idle connections kept alive for 5 minutes, up to 64 concurrent requests per host,
+     * HTTP/2 when the server supports it), or derives one from an existing
+     * {@link OkHttpClient} so that several PixAI clients share its connection pool,
+     * dispatcher and threads. Settings made on the builder override those of the
+     * shared client.
+     * <p>
+     * Image downloads use a separate transport described by the {@link TransportProfile}
+     * set with {@link #mediaProfile(TransportProfile)}: with the default OkHttp transport
+     * they get their own connection pool and dispatcher, so a burst of completed tasks
+     * cannot starve the status poller.
+     */
+    public static final class Builder {
+
+        private String apiKey;
+        private Transport transport;
+        private Transport mediaTransport;
+        private TransportProfile mediaProfile = TransportProfile.builder().build();
+        private OkHttpClient httpClient;
+        private ConnectionPool connectionPool;
+        private Dispatcher dispatcher;
+        private Integer maxIdleConnections;
+        private Duration keepAlive;
+        private Integer maxRequests;
+        private Integer maxRequestsPerHost;
+        private Boolean preferHttp2;
+        private Duration connectTimeout;
+        private Duration readTimeout;
+        private Duration callTimeout;
+        private String mediaUrl = "https://images-ng.pixai.art/";
+        private int warmConnections = 2;
+        private boolean warmUpOnBuild;
+        private HedgingPolicy hedging;
+        private int downloadSegments = 1;
+        private long segmentThreshold = 8L * 1024 * 1024;
+        private int downloadRetries = 3;
+        private boolean directBufferDownloads;
+        private boolean durableDownloads;
+        private int diskWriterThreads = 2;
+        private int diskWriterQueue = 256;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the API key for accessing the PixAI API.
+         * 
+         * @param apiKey The API key.
+         * @return This builder.
+         */
+        public Builder apiKey(String apiKey) {
+            this.apiKey = apiKey;
+            return this;
+        }
+
+        /**
+         * Uses the given transport for the API requests, for example a {@link JdkHttpTransport},
+         * and for image downloads unless {@link #mediaTransport(Transport)} is set.
+         * The OkHttp settings of this builder are ignored then.
+         * 
+         * @param transport The transport.
+         * @return This builder.
+         */
+        public Builder transport(Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * Uses the given transport for image downloads. The media profile only
+         * contributes its bandwidth cap then.
+         * 
+         * @param mediaTransport The transport for image downloads.
+         * @return This builder.
+         */
+        public Builder mediaTransport(Transport mediaTransport) {
+            this.mediaTransport = mediaTransport;
+            return this;
+        }
+
+        /**
+         * Sets the connection settings of image downloads.
+         * 
+         * @param mediaProfile The profile of the media traffic.
+         * @return This builder.
+         */
+        public Builder mediaProfile(TransportProfile mediaProfile) {
+            if (mediaProfile == null) {
+                throw new IllegalArgumentException("mediaProfile must not be null");
+            }
+            this.mediaProfile = mediaProfile;
+            return this;
+        }
+
+        /**
+         * Derives the HTTP client from an existing OkHttp client, sharing its
+         * connection pool, dispatcher and threads.
+         * 
+         * @param httpClient The OkHttp client to share.
+         * @return This builder.
+         */
+        public Builder httpClient(OkHttpClient httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+        /**
+         * Uses the given connection pool, which may be shared with other clients.
+         * 
+         * @param connectionPool The connection pool.
+         * @return This builder.
+         */
+        public Builder connectionPool(ConnectionPool connectionPool) {
+            this.connectionPool = connectionPool;
+            return this;
+        }
+
+        /**
+         * Uses the given dispatcher, which may be shared with other clients.
+         * 
+         * @param dispatcher The dispatcher.
+         * @return This builder.
+         */
+        public Builder dispatcher(Dispatcher dispatcher) {
+            this.dispatcher = dispatcher;
+            return this;
+        }
+
+        /**
+         * Sets the number of idle connections kept in a dedicated pool.
+         * 
+         * @param maxIdleConnections The maximum number of idle connections.
+         * @return This builder.
+         */
+        public Builder maxIdleConnections(int maxIdleConnections) {
+            this.maxIdleConnections = maxIdleConnections;
+            return this;
+        }
+
+        /**
+         * Sets how long idle connections of a dedicated pool are kept alive.
+         * 
+         * @param keepAlive The keep-alive duration.
+         * @return This builder.
+         */
+        public Builder keepAlive(Duration keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of concurrent requests of a dedicated dispatcher.
+         * 
+         * @param maxRequests The maximum number of requests.
+         * @return This builder.
+         */
+        public Builder maxRequests(int maxRequests) {
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of concurrent requests per host of a dedicated dispatcher.
+         * 
+         * @param maxRequestsPerHost The maximum number of requests per host.
+         * @return This builder.
+         */
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * Enables or disables HTTP/2. When enabled, HTTP/2 is negotiated with servers
+         * that support it and many requests are multiplexed over one connection.
+         * 
+         * @param preferHttp2 Prefer HTTP/2 or use HTTP/1.1 only.
+         * @return This builder.
+         */
+        public Builder preferHttp2(boolean preferHttp2) {
+            this.preferHttp2 = preferHttp2;
+            return this;
+        }
+
+        /**
+         * Sets the timeout for establishing connections.
+         * 
+         * @param connectTimeout The connect timeout.
+         * @return This builder.
+         */
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time between two reads of a response.
+         * 
+         * @param readTimeout The read timeout.
+         * @return This builder.
+         */
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the maximum duration of a whole call, including the download of the body.
+         * 
+         * @param callTimeout The call timeout, or {@link Duration#ZERO} for no limit.
+         * @return This builder.
+         */
+        public Builder callTimeout(Duration callTimeout) {
+            this.callTimeout = callTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the URL contacted by {@link PixAIClient#warmUp()} to open connections to the media host.
+         * 
+         * @param mediaUrl A URL on the host serving the generated images.
+         * @return This builder.
+         */
+        public Builder mediaUrl(String mediaUrl) {
+            this.mediaUrl = mediaUrl;
+            return this;
+        }
+
+        /**
+         * Sets the number of connections {@link PixAIClient#warmUp()} opens to each host.
+         * The pool must keep at least as many idle connections for all of them to stay warm.
+         * 
+         * @param warmConnections The number of connections per host, at least 1.
+         * @return This builder.
+         */
+        public Builder warmConnections(int warmConnections) {
+            if (warmConnections < 1) {
+                throw new IllegalArgumentException("warmConnections must be at least 1");
+            }
+            this.warmConnections = warmConnections;
+            return this;
+        }
+
+        /**
+         * Starts {@link PixAIClient#warmUp()} in the background as soon as the client is built.
+         * 
+         * @param warmUpOnBuild Warm up eagerly or not.
+         * @return This builder.
+         */
+        public Builder warmUpOnBuild(boolean warmUpOnBuild) {
+            this.warmUpOnBuild = warmUpOnBuild;
+            return this;
+        }
+
+        /**
+         * Enables hedged image downloads: a download whose response is late compared to
+         * recent downloads is raced against a second request.
+         * 
+         * @param hedging The hedging settings, or null to disable hedging.
+         * @return This builder.
+         */
+        public Builder hedging(HedgingPolicy hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+
+        /**
+         * Enables segmented image downloads. Images larger than the segment threshold
+         * are fetched as this many concurrent byte ranges when the media host supports
+         * range requests, and over a single stream otherwise. Useful for upscaled outputs.
+         * 
+         * @param downloadSegments The number of ranges, or 1 to disable segmented downloads.
+         * @return This builder.
+         */
+        public Builder downloadSegments(int downloadSegments) {
+            if (downloadSegments < 1) {
+                throw new IllegalArgumentException("downloadSegments must be at least 1");
+            }
+            this.downloadSegments = downloadSegments;
+            return this;
+        }
+
+        /**
+         * Sets the size from which segmented downloads are used. The default is 8 MiB.
+         * 
+         * @param segmentThreshold The size in bytes.
+         * @return This builder.
+         */
+        public Builder segmentThreshold(long segmentThreshold) {
+            this.segmentThreshold = segmentThreshold;
+            return this;
+        }
+
+        /**
+         * Sets how often an interrupted image download is resumed before it fails.
+         * Downloads are written to a {@code .part} file and continued with a range
+         * request after a dropped connection or a server error. The default is 3.
+         * 
+         * @param downloadRetries The number of resume attempts, 0 to fail on the first error.
+         * @return This builder.
+         */
+        public Builder downloadRetries(int downloadRetries) {
+            if (downloadRetries < 0) {
+                throw new IllegalArgumentException("downloadRetries must not be negative");
+            }
+            this.downloadRetries = downloadRetries;
+            return this;
+        }
+
+        /**
+         * Copies image bodies through pooled direct buffers instead of heap buffers.
+         * The buffers are written to the file as they are, which saves the copy into a
+         * temporary direct buffer that the JDK makes before each write of a heap buffer.
+         * The body is still copied once from the connection into the buffer; this is
+         * not a kernel-level zero-copy transfer. Costs up to 4 MiB of off-heap memory.
+         * Disabled by default.
+         * 
+         * @param directBufferDownloads True to use direct buffers for downloads.
+         * @return This builder.
+         */
+        public Builder directBufferDownloads(boolean directBufferDownloads) {
+            this.directBufferDownloads = directBufferDownloads;
+            return this;
+        }
+
+        /**
+         * Makes saved images crash-safe. Completed downloads are handed to a disk
+         * writer stage without blocking the download threads; writer threads force
+         * each image to disk, rename it and sync its directory once per batch, and
+         * the download completes only afterwards. A download takes a place in the
+         * stage before it starts, so downloads wait for the disk to keep up. Only the directory syncs are
+         * grouped; every image is still forced with a sync of its own. Close the
+         * client with {@link PixAIClient#close()} to stop the writer threads.
+         * Disabled by default.
+         * 
+         * @param durableDownloads True to sync saved images to disk.
+         * @return This builder.
+         */
+        public Builder durableDownloads(boolean durableDownloads) {
+            this.durableDownloads = durableDownloads;
+            return this;
+        }
+
+        /**
+         * Sets the size of the disk writer stage used by durable downloads.
+         * The defaults are 2 writer threads and 256 images. Images count from the
+         * start of their download until they are written; further downloads do not
+         * start until a place is free, and wait for it without blocking a thread.
+         * 
+         * @param threads The number of writer threads, at least 1.
+         * @param queueCapacity The maximum number of images downloading or queued for the writers at a time, at least 1.
+         * @return This builder.
+         */
+        public Builder diskWriter(int threads, int queueCapacity) {
+            if (threads < 1 || queueCapacity < 1) {
+                throw new IllegalArgumentException("threads and queueCapacity must be at least 1");
+            }
+            this.diskWriterThreads = threads;
+            this.diskWriterQueue = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Builds the client.
+         * 
+         * @return The client.
+         */
+        public PixAIClient build() {
+            if (apiKey == null) {
+                throw new IllegalStateException("apiKey is required");
+            }
+            PixAIClient client = new PixAIClient(this);
+            if (warmUpOnBuild) {
+                client.warmUp();
+            }
+            return client;
+        }
+
+        /**
+         * Creates the transport of image downloads.
+         * When the API uses the default OkHttp transport and no media transport is set,
+         * the media client is derived from the API client with its own connection pool,
+         * dispatcher and timeouts from the media profile. A custom API transport is
+         * shared with the downloads unless a media transport is set.
+         * 
+         * @param apiTransport The transport of the API requests.
+         * @return The transport of image downloads.
+         */
+        private Transport buildMediaTransport(Transport apiTransport) {
+            Transport media;
+            if (mediaTransport != null) {
+                media = mediaTransport;
+            } else if (transport == null) {
+                Dispatcher mediaDispatcher = new Dispatcher();
+                mediaDispatcher.setMaxRequests(mediaProfile.getMaxRequests());
+                mediaDispatcher.setMaxRequestsPerHost(mediaProfile.getMaxRequestsPerHost());
+                OkHttpClient mediaClient = ((OkHttpTransport) apiTransport).getClient().newBuilder()
+                        .connectionPool(new ConnectionPool(mediaProfile.getMaxIdleConnections(),
+                                mediaProfile.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS))
+                        .dispatcher(mediaDispatcher)
+                        .connectTimeout(mediaProfile.getConnectTimeout())
+                        .readTimeout(mediaProfile.getReadTimeout())
+                        .callTimeout(mediaProfile.getCallTimeout())
+                        .build();
+                media = new OkHttpTransport(mediaClient);
+            } else {
+                media = apiTransport;
+            }
+            return mediaProfile.getMaxBytesPerSecond() > 0 ? new ThrottledTransport(media, mediaProfile.getMaxBytesPerSecond()) : media;
+        }
+
+        /**
+         * Creates the OkHttp client from the settings of the builder.
+         * Settings left unset keep the values of the shared client, or the
+         * production defaults when no client is shared.
+         * 
+         * @return The OkHttp client.
+         */
+        private OkHttpClient buildHttpClient() {
+            boolean dedicated = httpClient == null;
+            OkHttpClient.Builder builder = dedicated ? new OkHttpClient.Builder() : httpClient.newBuilder();
+
+            if (connectionPool != null) {
+                builder.connectionPool(connectionPool);
+            } else if (dedicated || maxIdleConnections != null || keepAlive != null) {
+                builder.connectionPool(new ConnectionPool(
+                        maxIdleConnections != null ? maxIdleConnections : 32,
+                        (keepAlive != null ? keepAlive : Duration.ofMinutes(5)).toMillis(),
+                        TimeUnit.MILLISECONDS));
+            }
+
+            if (dispatcher != null) {
+                builder.dispatcher(dispatcher);
+            } else if (dedicated || maxRequests != null || maxRequestsPerHost != null) {
+                Dispatcher created = new Dispatcher();
+                created.setMaxRequests(maxRequests != null ? maxRequests : 256);
+                created.setMaxRequestsPerHost(maxRequestsPerHost != null ? maxRequestsPerHost : 64);
+                builder.dispatcher(created);
+            }
+
+            if (preferHttp2 != null) {
+                builder.protocols(preferHttp2
+                        ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : Collections.singletonList(Protocol.HTTP_1_1));
+            }
+            if (connectTimeout != null || dedicated) {
+                builder.connectTimeout(connectTimeout != null ? connectTimeout : Duration.ofSeconds(10));
+            }
+            if (readTimeout != null || dedicated) {
+                builder.readTimeout(readTimeout != null ? readTimeout : Duration.ofSeconds(30));
+            }
+            if (callTimeout != null) {
+                builder.callTimeout(callTimeout);
+            }
+            return builder.build();
+        }
     }
 }
@@ -0,0 +1,137 @@
+package kz.awsstudio.pixai.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.json.JSONObject;
+
+/**
+ * Learns how long generations take and decides when to check a task next.
+ * Observed durations are kept per parameter class (model, sampling steps, image
+ * area and upscale factor) as an exponentially weighted mean and deviation.
+ * The first check of a task is scheduled shortly before its predicted completion,
+ * however far away that is; once the prediction is passed, checks tighten around
+ * it and then back off the longer the task overruns, up to {@code MAX_INTERVAL_MILLIS}.
+ * All delays get a small random jitter so tasks submitted together do not keep
+ * polling in lockstep.
+ */
+final class PollTimingModel {
+
+    private static final long DEFAULT_INTERVAL_MILLIS = 5000;
+    private static final long MIN_INTERVAL_MILLIS = 500;
+    private static final long MAX_INTERVAL_MILLIS = 15000;
+    private static final double SMOOTHING = 0.2;
+    private static final double JITTER = 0.1;
+
+    private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Computes the parameter class of a generation.
+     * Generations of the same class are expected to take about the same time.
+     *
+     * @param parameters The parameters of the createGenerationTask mutation.
+     * @return The parameter class.
+     */
+    static String classify(JSONObject parameters) {
+        int steps = parameters.optInt("samplingSteps", 0);
+        long area = (long) parameters.optInt("width", 0) * parameters.optInt("height", 0);
+        long megapixelTenths = Math.round(area / 100000.0);
+        return parameters.optString("modelId", "")
+                + "|" + steps
+                + "|" + megapixelTenths
+                + "|" + parameters.optDouble("upscale", 1)
+                + "|" + parameters.optBoolean("enableTile", false);
+    }
+
+    /**
+     * Records the observed duration of a completed generation.
+     *
+     * @param parameterClass The parameter class of the generation.
+     * @param durationMillis The time between submission and completion, without the lag of the status checks.
+     */
+    void record(String parameterClass, long durationMillis) {
+        stats.computeIfAbsent(parameterClass, key -> new Stats()).add(durationMillis);
+    }
+
+    /**
+     * Computes the delay before the next status check of a task.
+     *
+     * @param parameterClass The parameter class of the generation.
+     * @param elapsedMillis The time since the task was submitted.
+     * @return The delay in milliseconds.
+     */
+    long nextDelayMillis(String parameterClass, long elapsedMillis) {
+        Stats classStats = stats.get(parameterClass);
+        if (classStats == null) {
+            return jitter(DEFAULT_INTERVAL_MILLIS);
+        }
+
+        long mean;
+        long deviation;
+        synchronized (classStats) {
+            mean = (long) classStats.mean;
+            deviation = (long) classStats.deviation;
+        }
+
+        long expected = Math.max(mean - deviation, 0);
+        if (elapsedMillis < expected) {
+            return jitter(Math.max(expected - elapsedMillis, MIN_INTERVAL_MILLIS));
+        }
+        long overrun = elapsedMillis - expected;
+        long delay = Math.max(deviation / 2, MIN_INTERVAL_MILLIS) + overrun / 4;
+        return jitter(Math.min(delay, MAX_INTERVAL_MILLIS));
+    }
+
+    /**
+     * Checks whether a generation has probably finished, so that its next status
+     * check should fetch the media of the task as well.
+     *
+     * @param parameterClass The parameter class of the generation.
+     * @param elapsedMillis The time since the task was submitted.
+     * @return True once the predicted completion, less twice the jitter of the checks,
+     *         has passed; false while nothing is known about the class.
+     */
+    boolean likelyCompleted(String parameterClass, long elapsedMillis) {
+        Stats classStats = stats.get(parameterClass);
+        if (classStats == null) {
+            return false;
+        }
+        long expected;
+        synchronized (classStats) {
+            expected = (long) Math.max(classStats.mean - classStats.deviation, 0);
+        }
+        return elapsedMillis >= expected * (1 - 2 * JITTER);
+    }
+
+    /**
+     * Applies a random jitter to a delay.
+     *
+     * @param delayMillis The delay in milliseconds.
+     * @return The jittered delay in milliseconds.
+     */
+    private static long jitter(long delayMillis) {
+        double factor = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        return (long) (delayMillis * factor);
+    }
+
+    /**
+     * Running statistics of one parameter class.
+     */
+    private static final class Stats {
+
+        private double mean = -1;
+        private double deviation;
+
+        private synchronized void add(long durationMillis) {
+            if (mean < 0) {
+                mean = durationMillis;
+                deviation = durationMillis / 4.0;
+                return;
+            }
+            double error = durationMillis - mean;
+            mean += SMOOTHING * error;
+            deviation += SMOOTHING * (Math.abs(error) - deviation);
+        }
+    }
+}
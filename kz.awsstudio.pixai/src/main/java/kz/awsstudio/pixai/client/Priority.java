@@ -0,0 +1,25 @@
+package kz.awsstudio.pixai.client;
+
+/**
+ * Priority lane of a generation request.
+ * When the number of concurrent server-side tasks is capped, waiting requests of a
+ * higher lane are submitted first, while lower lanes keep a guaranteed minimum share
+ * of the submissions so they do not starve.
+ */
+public enum Priority {
+
+    /**
+     * A user is waiting for the image.
+     */
+    INTERACTIVE,
+
+    /**
+     * Regular work, the default lane.
+     */
+    NORMAL,
+
+    /**
+     * Background and bulk jobs.
+     */
+    BULK
+}
@@ -0,0 +1,87 @@
+package kz.awsstudio.pixai.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Limits the {@link GenerationEvent.DownloadProgress} events of a download to
+ * at most one per interval. Copies report every buffer, which would otherwise
+ * produce hundreds of events for a single image; the event of the last byte is
+ * always delivered.
+ */
+final class ProgressThrottle implements ResumableDownload.Progress {
+
+    static final long INTERVAL_MILLIS = 100;
+
+    private final String taskId;
+    private final Consumer<GenerationEvent> listener;
+    private final long intervalNanos;
+    private long lastAt;
+    private long lastBytes = -1;
+    private long pendingBytes = -1;
+    private long pendingLength = -1;
+
+    /**
+     * Creates a throttle for the downloads of a task.
+     *
+     * @param taskId The ID of the generation task the image belongs to.
+     * @param listener Receives the events that pass the throttle.
+     */
+    ProgressThrottle(String taskId, Consumer<GenerationEvent> listener) {
+        this(taskId, listener, INTERVAL_MILLIS);
+    }
+
+    ProgressThrottle(String taskId, Consumer<GenerationEvent> listener, long intervalMillis) {
+        this.taskId = taskId;
+        this.listener = listener;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.lastAt = System.nanoTime() - intervalNanos;
+    }
+
+    /**
+     * Reports the progress; the event is delivered if the interval has passed
+     * since the last one or the download is complete.
+     * Concurrent range downloads may report their totals out of order, so
+     * progress that is not ahead of the last event is dropped.
+     *
+     * @param bytes The number of bytes downloaded so far.
+     * @param contentLength The size of the image, or -1 if unknown.
+     */
+    @Override
+    public void update(long bytes, long contentLength) {
+        synchronized (this) {
+            if (bytes <= lastBytes) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (bytes != contentLength && now - lastAt < intervalNanos) {
+                pendingBytes = bytes;
+                pendingLength = contentLength;
+                return;
+            }
+            lastAt = now;
+            lastBytes = bytes;
+            pendingBytes = -1;
+        }
+        listener.accept(new GenerationEvent.DownloadProgress(taskId, bytes, contentLength));
+    }
+
+    /**
+     * Delivers the last progress held back by the throttle, for downloads whose
+     * size was not announced.
+     */
+    void flush() {
+        long bytes;
+        long contentLength;
+        synchronized (this) {
+            if (pendingBytes <= lastBytes) {
+                return;
+            }
+            bytes = pendingBytes;
+            contentLength = pendingLength;
+            lastBytes = bytes;
+            pendingBytes = -1;
+        }
+        listener.accept(new GenerationEvent.DownloadProgress(taskId, bytes, contentLength));
+    }
+}
@@ -0,0 +1,189 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Downloads a file as several byte ranges fetched concurrently, each written at
+ * its offset into a preallocated file. Used for large images when the media
+ * host supports range requests.
+ */
+final class RangedDownload {
+
+    private RangedDownload() {
+    }
+
+    /**
+     * Checks with a HEAD request whether a file can be downloaded in ranges.
+     *
+     * @param transport The transport.
+     * @param request The GET request of the file.
+     * @return A future completed with the size of the file, or -1 if the server
+     *         does not announce byte ranges and a size. Cancelling it cancels the request.
+     */
+    static CompletableFuture<Long> probe(Transport transport, TransportRequest request) {
+        CompletableFuture<TransportResponse> sent = transport.send(request.toBuilder().method("HEAD").build());
+        CompletableFuture<Long> result = sent.thenApply(response -> {
+            try (TransportResponse r = response) {
+                if (!r.isSuccessful() || !"bytes".equalsIgnoreCase(r.header("Accept-Ranges"))) {
+                    return -1L;
+                }
+                String length = r.header("Content-Length");
+                try {
+                    return length != null ? Long.parseLong(length.trim()) : -1L;
+                } catch (NumberFormatException e) {
+                    return -1L;
+                }
+            }
+        });
+        result.whenComplete((length, error) -> {
+            if (result.isCancelled()) {
+                sent.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Downloads a file in ranges.
+     *
+     * @param transport The transport.
+     * @param request The GET request of the file.
+     * @param length The size of the file.
+     * @param segments The number of ranges.
+     * @param file The file to write; it is created or truncated, and deleted if the download fails.
+     * @param progress Receives the total number of bytes downloaded so far.
+     * @param copier Copies the bodies of the ranges into the file.
+     * @return A future completed once the whole file is written. Cancelling it
+     *         cancels the range requests, stops the copies and deletes the file.
+     */
+    static CompletableFuture<Void> fetch(Transport transport, TransportRequest request, long length, int segments,
+            Path file, LongConsumer progress, ChannelCopier copier) {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            if (length > 0) {
+                channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+            }
+        } catch (IOException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        AtomicBoolean aborted = new AtomicBoolean();
+        AtomicLong downloaded = new AtomicLong();
+        long segmentSize = (length + segments - 1) / segments;
+        List<CompletableFuture<TransportResponse>> calls = new ArrayList<>();
+        Set<TransportResponse> open = ConcurrentHashMap.newKeySet();
+        List<CompletableFuture<Void>> parts = new ArrayList<>();
+        for (long start = 0; start < length; start += segmentSize) {
+            long first = start;
+            long last = Math.min(start + segmentSize, length) - 1;
+            CompletableFuture<TransportResponse> call = transport.send(request.toBuilder()
+                    .header("Range", "bytes=" + first + "-" + last)
+                    .build());
+            calls.add(call);
+            parts.add(call.thenAccept(response -> {
+                open.add(response);
+                try (TransportResponse r = response) {
+                    if (aborted.get()) {
+                        throw new IOException("Download aborted");
+                    }
+                    if (r.code() != 206) {
+                        throw new IOException("Unexpected code " + r + " for range " + first + "-" + last);
+                    }
+                    writeRange(r.bodyChannel(), channel, first, last, aborted, bytes -> progress.accept(downloaded.addAndGet(bytes)), copier);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    open.remove(response);
+                }
+            }));
+        }
+
+        // Closing the responses unblocks copies waiting for data.
+        Runnable abort = () -> {
+            if (aborted.compareAndSet(false, true)) {
+                calls.forEach(call -> call.cancel(false));
+                open.forEach(TransportResponse::close);
+            }
+        };
+        CompletableFuture<Void> all = CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0]));
+        for (CompletableFuture<Void> part : parts) {
+            part.whenComplete((ignored, error) -> {
+                if (error != null) {
+                    abort.run();
+                }
+            });
+        }
+        // The file is cleaned up in a stage of its own, which cancelling the result does not skip.
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        all.whenComplete((ignored, error) -> {
+            try {
+                channel.close();
+                if (error != null) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                if (error == null) {
+                    throw new CompletionException(e);
+                }
+            }
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                result.complete(null);
+            }
+        });
+        result.whenComplete((ignored, error) -> {
+            if (result.isCancelled()) {
+                abort.run();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Copies the body of a range response into the file.
+     *
+     * @param in The body of the response.
+     * @param channel The channel of the file.
+     * @param first The offset of the first byte of the range.
+     * @param last The offset of the last byte of the range.
+     * @param aborted Set when another range failed; the copy stops then.
+     * @param progress Receives the number of bytes of each write.
+     * @param copier Copies the body into the file.
+     * @throws IOException If reading the body or writing the file fails, or the range is incomplete.
+     */
+    private static void writeRange(ReadableByteChannel in, FileChannel channel, long first, long last, AtomicBoolean aborted,
+            LongConsumer progress, ChannelCopier copier) throws IOException {
+        long copied;
+        try (ReadableByteChannel body = in) {
+            copied = copier.copy(body, channel, first, last + 1 - first, bytes -> {
+                if (aborted.get()) {
+                    throw new IOException("Download aborted");
+                }
+                progress.accept(bytes);
+            });
+        }
+        if (copied != last + 1 - first) {
+            throw new IOException("Range " + first + "-" + last + " ended after " + copied + " bytes");
+        }
+    }
+}
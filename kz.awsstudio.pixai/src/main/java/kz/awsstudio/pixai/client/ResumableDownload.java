@@ -0,0 +1,356 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Download into a {@code .part} file that survives failures.
+ * A transient failure (a dropped connection, a 5xx response) is retried with a
+ * {@code Range: bytes=N-} request that continues after the bytes already on disk.
+ * A sidecar {@code .part.meta} file records the validator (ETag or Last-Modified)
+ * of the partial content, so a restarted process resumes a partial file it finds
+ * on disk; the {@code If-Range} header makes the server send the whole file again
+ * if the content has changed in the meantime.
+ * Every attempt gets the time left until the deadline of the download as its
+ * timeout, and no attempt is started or continued once the deadline has passed.
+ */
+final class ResumableDownload {
+
+    static final String PART_SUFFIX = ".part";
+    static final String META_SUFFIX = ".part.meta";
+
+    /**
+     * Receives the progress of a download.
+     */
+    interface Progress {
+
+        /**
+         * Reports the progress.
+         *
+         * @param bytes The number of bytes of the file on disk.
+         * @param contentLength The size of the file, or -1 if unknown.
+         */
+        void update(long bytes, long contentLength);
+    }
+
+    private final Function<TransportRequest, CompletableFuture<TransportResponse>> firstSender;
+    private final Transport transport;
+    private final TransportRequest request;
+    private final Path part;
+    private final Path meta;
+    private final int maxRetries;
+    private final Progress progress;
+    private final ChannelCopier copier;
+    private final Deadline deadline;
+    private String validator;
+    private volatile boolean cancelled;
+    private volatile CompletableFuture<TransportResponse> inFlight;
+    private volatile TransportResponse reading;
+
+    /**
+     * Creates a download.
+     *
+     * @param transport The transport sending the resume requests.
+     * @param firstSender Sends the first request when no partial file is resumed, for example with hedging.
+     * @param request The GET request of the file.
+     * @param part The partial file; the metadata is stored next to it.
+     * @param maxRetries The number of resume attempts after transient failures.
+     * @param progress Receives the progress.
+     * @param copier Copies the body into the partial file.
+     * @param deadline The time by which the download must be finished.
+     */
+    ResumableDownload(Transport transport, Function<TransportRequest, CompletableFuture<TransportResponse>> firstSender,
+            TransportRequest request, Path part, int maxRetries, Progress progress, ChannelCopier copier, Deadline deadline) {
+        this.transport = transport;
+        this.firstSender = firstSender;
+        this.request = request;
+        this.part = part;
+        this.meta = metaFile(part);
+        this.maxRetries = maxRetries;
+        this.progress = progress;
+        this.copier = copier;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Downloads the file into the partial file. The caller moves the complete
+     * file to its final path with {@link #moveIntoPlace(Path, Path)} and deletes
+     * the metadata afterwards, so a crash before the move still leaves a
+     * resumable download.
+     *
+     * @return A future completed with the complete partial file. Cancelling the
+     *         future cancels the current request and stops further retries; the
+     *         partial file is kept for a later resume.
+     */
+    CompletableFuture<Path> run() {
+        long offset;
+        try {
+            offset = resumableOffset();
+        } catch (IOException e) {
+            offset = 0;
+        }
+        CompletableFuture<Path> result = attempt(offset, 0).thenApply(ignored -> part);
+        result.whenComplete((file, error) -> {
+            if (result.isCancelled()) {
+                cancelled = true;
+                CompletableFuture<TransportResponse> current = inFlight;
+                if (current != null) {
+                    current.cancel(false);
+                }
+                // Closing the response unblocks a copy waiting for data.
+                TransportResponse response = reading;
+                if (response != null) {
+                    response.close();
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the metadata file belonging to a partial file.
+     *
+     * @param part The partial file.
+     * @return The path of the metadata file.
+     */
+    static Path metaFile(Path part) {
+        String name = part.getFileName().toString();
+        return part.resolveSibling(name.substring(0, name.length() - PART_SUFFIX.length()) + META_SUFFIX);
+    }
+
+    /**
+     * Moves a completed file to its final path, atomically where the filesystem supports it.
+     *
+     * @param part The completed file.
+     * @param target The final path.
+     * @return The final path.
+     * @throws IOException If the file cannot be moved.
+     */
+    static Path moveIntoPlace(Path part, Path target) throws IOException {
+        try {
+            return Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            return Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Determines where a partial file left by an earlier attempt can be continued.
+     *
+     * @return The number of bytes to keep, or 0 to start over.
+     * @throws IOException If the files cannot be read.
+     */
+    private long resumableOffset() throws IOException {
+        if (!Files.exists(part) || !Files.exists(meta)) {
+            return 0;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(meta, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        validator = properties.getProperty("validator");
+        return validator != null ? Files.size(part) : 0;
+    }
+
+    /**
+     * Sends one request and appends its body to the partial file, retrying on transient failures.
+     *
+     * @param offset The number of bytes already on disk.
+     * @param retry The number of retries so far.
+     * @return A future completed once the file is complete.
+     */
+    private CompletableFuture<Void> attempt(long offset, int retry) {
+        TransportRequest.Builder builder = request.toBuilder();
+        if (deadline.isBounded()) {
+            builder.timeout(deadline.remaining());
+        }
+        if (offset > 0) {
+            builder.header("Range", "bytes=" + offset + "-").header("If-Range", validator);
+        }
+        TransportRequest next = builder.build();
+        CompletableFuture<TransportResponse> sent = offset == 0 && retry == 0 ? firstSender.apply(next) : transport.send(next);
+        inFlight = sent;
+        if (cancelled) {
+            sent.cancel(false);
+        }
+
+        return sent.thenApply(response -> {
+            reading = response;
+            try (TransportResponse r = response) {
+                write(r, offset);
+                return (Void) null;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                reading = null;
+            }
+        }).handle((done, error) -> {
+            if (error == null) {
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            long delayMillis = 500L << retry;
+            boolean retryable = !cancelled && retry < maxRetries && isTransient(cause);
+            if (retryable && deadline.remainingNanos() <= TimeUnit.MILLISECONDS.toNanos(delayMillis)) {
+                DeadlineExceededException expired = new DeadlineExceededException("Download did not finish within its deadline");
+                expired.initCause(cause);
+                cause = expired;
+                retryable = false;
+            }
+            if (!retryable) {
+                CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(cause);
+                return failed;
+            }
+            long resumeAt;
+            try {
+                resumeAt = resumableOffset();
+            } catch (IOException e) {
+                resumeAt = 0;
+            }
+            long from = resumeAt;
+            return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> attempt(from, retry + 1));
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Writes the body of a response to the partial file.
+     *
+     * @param response The response.
+     * @param offset The number of bytes already on disk that were requested to be skipped.
+     * @throws IOException If the response is unusable or the body cannot be copied.
+     */
+    private void write(TransportResponse response, long offset) throws IOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Download cancelled");
+        }
+        int code = response.code();
+        long start;
+        long contentLength;
+        if (code == 206 && offset > 0) {
+            start = parseRangeStart(response.header("Content-Range"));
+            if (start != offset) {
+                Files.deleteIfExists(meta);
+                throw new ResumeException("Server resumed at " + start + " instead of " + offset, true);
+            }
+            contentLength = response.contentLength() >= 0 ? offset + response.contentLength() : -1;
+        } else if (code == 416) {
+            Files.deleteIfExists(meta);
+            Files.deleteIfExists(part);
+            throw new ResumeException("Range not satisfiable for " + response, true);
+        } else if (response.isSuccessful()) {
+            start = 0;
+            contentLength = response.contentLength();
+            writeMeta(response.header("ETag") != null ? response.header("ETag") : response.header("Last-Modified"));
+        } else {
+            boolean retryable = code >= 500 || code == 408 || code == 429;
+            throw new ResumeException("Unexpected code " + response + " with message: " + response.bodyString(), retryable);
+        }
+
+        long[] written = {start};
+        try (ReadableByteChannel in = response.bodyChannel();
+                FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            out.truncate(start);
+            copier.copy(in, out, start, -1, bytes -> {
+                if (cancelled) {
+                    throw new InterruptedIOException("Download cancelled");
+                }
+                if (deadline.isExpired()) {
+                    throw new DeadlineExceededException("Download did not finish within its deadline");
+                }
+                written[0] += bytes;
+                progress.update(written[0], contentLength);
+            });
+        }
+        if (contentLength >= 0 && written[0] != contentLength) {
+            throw new ResumeException("Download ended after " + written[0] + " of " + contentLength + " bytes", true);
+        }
+    }
+
+    /**
+     * Records the validator of the content being written, or removes the record
+     * if the server sent none, in which case the partial file cannot be resumed safely.
+     *
+     * @param newValidator The ETag or Last-Modified value, or null.
+     * @throws IOException If the metadata cannot be written.
+     */
+    private void writeMeta(String newValidator) throws IOException {
+        validator = newValidator;
+        if (newValidator == null) {
+            Files.deleteIfExists(meta);
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty("url", request.getUrl());
+        properties.setProperty("validator", newValidator);
+        try (Writer writer = Files.newBufferedWriter(meta, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+    }
+
+    /**
+     * Extracts the first byte offset of a {@code Content-Range} header.
+     *
+     * @param contentRange The header value, for example "bytes 100-199/200".
+     * @return The offset, or -1 if the header is missing or malformed.
+     */
+    private static long parseRangeStart(String contentRange) {
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+        int dash = contentRange.indexOf('-');
+        try {
+            return dash > 6 ? Long.parseLong(contentRange.substring(6, dash).trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Checks whether a failure is worth a resume attempt.
+     *
+     * @param error The failure.
+     * @return True for I/O errors other than non-retryable HTTP responses.
+     */
+    private static boolean isTransient(Throwable error) {
+        if (error instanceof CancellationException || error instanceof DeadlineExceededException) {
+            return false;
+        }
+        if (error instanceof ResumeException) {
+            return ((ResumeException) error).retryable;
+        }
+        return error instanceof IOException;
+    }
+
+    /**
+     * Failure of an attempt, with whether a retry can help.
+     */
+    private static final class ResumeException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean retryable;
+
+        private ResumeException(String message, boolean retryable) {
+            super(message);
+            this.retryable = retryable;
+        }
+    }
+}
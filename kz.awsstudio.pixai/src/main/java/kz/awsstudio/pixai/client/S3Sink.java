@@ -0,0 +1,360 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sink that uploads images to an S3-compatible object store, for example Amazon S3,
+ * MinIO or a local stand-in. Requests are signed with AWS Signature Version 4.
+ * <p>
+ * An image is buffered in parts of {@code partSize} bytes. An image that fits into
+ * one part is stored with a single PUT; larger images are uploaded with a
+ * multipart upload whose parts are sent while the download continues, so at most
+ * one part per image is held in memory. A failed download aborts the multipart
+ * upload, and so does a multipart upload that cannot be completed, so the store
+ * keeps no orphaned parts.
+ * <p>
+ * The sink sends its requests through the {@link Transport} set with
+ * {@link Builder#transport(Transport)}. The uploads block the thread that delivers
+ * the image, so the transport should not be the media transport of the client.
+ */
+public final class S3Sink implements ImageSink<String> {
+
+    private static final Logger LOGGER = Logger.getLogger(S3Sink.class.getName());
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final Transport transport;
+    private final SigV4Signer signer;
+    private final String baseUrl;
+    private final String hostStyleBaseUrl;
+    private final boolean pathStyle;
+    private final Function<ImageInfo, String> keys;
+    private final int partSize;
+
+    private S3Sink(Builder builder) {
+        this.transport = builder.transport;
+        this.signer = new SigV4Signer(builder.accessKey, builder.secretKey, builder.sessionToken, builder.region);
+        String endpoint = builder.endpoint.toString().replaceAll("/+$", "");
+        this.baseUrl = endpoint + "/" + SigV4Signer.encode(builder.bucket, false) + "/";
+        this.hostStyleBaseUrl = builder.endpoint.getScheme() + "://" + builder.bucket + "." + builder.endpoint.getRawAuthority() + "/";
+        this.keys = builder.keys;
+        this.partSize = builder.partSize;
+        this.pathStyle = builder.pathStyle;
+    }
+
+    /**
+     * Creates a builder.
+     *
+     * @param endpoint The URL of the store, for example "https://s3.eu-central-1.amazonaws.com"
+     *        or "http://127.0.0.1:9000".
+     * @param bucket The bucket receiving the images.
+     * @return The builder.
+     */
+    public static Builder builder(String endpoint, String bucket) {
+        return new Builder(endpoint, bucket);
+    }
+
+    @Override
+    public Output<String> open(ImageInfo image) throws IOException {
+        String key = keys.apply(image);
+        if (key == null || key.isEmpty()) {
+            throw new IOException("No object key for " + image);
+        }
+        return new Upload(key, image.getContentType() != null ? image.getContentType() : "application/octet-stream");
+    }
+
+    /**
+     * Returns the URL of an object, with the key encoded for signing.
+     *
+     * @param key The object key.
+     * @param query The encoded query string, or null.
+     * @return The URL.
+     */
+    private URI objectUrl(String key, String query) {
+        String url = (pathStyle ? baseUrl : hostStyleBaseUrl) + SigV4Signer.encode(key, true);
+        return URI.create(query != null ? url + "?" + query : url);
+    }
+
+    /**
+     * Signs and sends a request and waits for the response.
+     *
+     * @param method The HTTP method.
+     * @param url The URL of the request.
+     * @param contentType The media type of the body, or null without a body.
+     * @param body The body, or null.
+     * @return The response; it must be closed.
+     * @throws IOException If the request fails or the store answers with an error.
+     */
+    private TransportResponse send(String method, URI url, String contentType, byte[] body) throws IOException {
+        TransportRequest.Builder builder = TransportRequest.builder(url.toString()).method(method);
+        if (body != null) {
+            builder = "POST".equals(method) ? builder.post(contentType, body) : builder.put(contentType, body);
+        }
+        for (Map.Entry<String, String> header : signer.sign(method, url, SigV4Signer.hashPayload(body), ZonedDateTime.now()).entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        TransportResponse response = PixAIClient.await(transport.send(builder.build()), method + " " + url);
+        if (!response.isSuccessful()) {
+            throw new IOException("Unexpected code " + response + " with message: " + response.bodyString());
+        }
+        return response;
+    }
+
+    /**
+     * Extracts the text of the first XML element with the given name.
+     *
+     * @param xml The XML document.
+     * @param element The name of the element.
+     * @return The text, or null if the element is missing.
+     */
+    private static String xmlText(String xml, String element) {
+        int start = xml.indexOf("<" + element + ">");
+        int end = xml.indexOf("</" + element + ">");
+        return start >= 0 && end > start ? xml.substring(start + element.length() + 2, end) : null;
+    }
+
+    /**
+     * Upload of one image.
+     */
+    private final class Upload implements Output<String> {
+
+        private final String key;
+        private final String contentType;
+        private final List<String> etags = new ArrayList<>();
+        private ByteBuffer part;
+        private String uploadId;
+
+        private Upload(String key, String contentType) {
+            this.key = key;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            if (part == null) {
+                part = ByteBuffer.allocate(partSize);
+            }
+            while (data.hasRemaining()) {
+                if (!part.hasRemaining()) {
+                    uploadPart();
+                }
+                int n = Math.min(part.remaining(), data.remaining());
+                ByteBuffer slice = data.duplicate();
+                slice.limit(slice.position() + n);
+                part.put(slice);
+                data.position(data.position() + n);
+            }
+        }
+
+        @Override
+        public String commit() throws IOException {
+            if (uploadId == null) {
+                byte[] whole = part != null ? Arrays.copyOf(part.array(), part.position()) : new byte[0];
+                send("PUT", objectUrl(key, null), contentType, whole).close();
+                return key;
+            }
+            try {
+                if (part.position() > 0) {
+                    uploadPart();
+                }
+                StringBuilder xml = new StringBuilder("<CompleteMultipartUpload>");
+                for (int i = 0; i < etags.size(); i++) {
+                    xml.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                            .append(etags.get(i)).append("</ETag></Part>");
+                }
+                xml.append("</CompleteMultipartUpload>");
+                String result = send("POST", objectUrl(key, "uploadId=" + SigV4Signer.encode(uploadId, false)),
+                        "application/xml", xml.toString().getBytes(StandardCharsets.UTF_8)).bodyString();
+                if (result.contains("<Error>")) {
+                    throw new IOException("Could not complete the upload of " + key + ": " + result);
+                }
+                return key;
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+        }
+
+        @Override
+        public void abort() {
+            part = null;
+            if (uploadId == null) {
+                return;
+            }
+            try {
+                send("DELETE", objectUrl(key, "uploadId=" + SigV4Signer.encode(uploadId, false)), null, null).close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not abort the upload of " + key, e);
+            }
+        }
+
+        /**
+         * Uploads the buffered bytes as the next part, starting the multipart upload first if needed.
+         *
+         * @throws IOException If the upload fails.
+         */
+        private void uploadPart() throws IOException {
+            if (uploadId == null) {
+                String created = send("POST", objectUrl(key, "uploads="), contentType, new byte[0]).bodyString();
+                uploadId = xmlText(created, "UploadId");
+                if (uploadId == null) {
+                    throw new IOException("No upload ID in the response for " + key + ": " + created);
+                }
+            }
+            byte[] bytes = part.position() == part.capacity() ? part.array() : Arrays.copyOf(part.array(), part.position());
+            String query = "partNumber=" + (etags.size() + 1) + "&uploadId=" + SigV4Signer.encode(uploadId, false);
+            try (TransportResponse response = send("PUT", objectUrl(key, query), "application/octet-stream", bytes)) {
+                String etag = response.header("ETag");
+                if (etag == null) {
+                    throw new IOException("No ETag for part " + (etags.size() + 1) + " of " + key);
+                }
+                etags.add(etag);
+            }
+            part.clear();
+        }
+    }
+
+    /**
+     * Builder of {@link S3Sink}.
+     */
+    public static final class Builder {
+
+        private final URI endpoint;
+        private final String bucket;
+        private String region = "us-east-1";
+        private String accessKey;
+        private String secretKey;
+        private String sessionToken;
+        private boolean pathStyle = true;
+        private Function<ImageInfo, String> keys = ImageInfo::suggestedFileName;
+        private int partSize = 8 * 1024 * 1024;
+        private Transport transport;
+
+        private Builder(String endpoint, String bucket) {
+            if (endpoint == null || bucket == null) {
+                throw new IllegalArgumentException("endpoint and bucket must not be null");
+            }
+            this.endpoint = URI.create(endpoint);
+            this.bucket = bucket;
+        }
+
+        /**
+         * Sets the region used in the signature. The default is "us-east-1", which
+         * most S3-compatible stores accept.
+         *
+         * @param region The region.
+         * @return This builder.
+         */
+        public Builder region(String region) {
+            this.region = region;
+            return this;
+        }
+
+        /**
+         * Sets the credentials.
+         *
+         * @param accessKey The access key ID.
+         * @param secretKey The secret access key.
+         * @return This builder.
+         */
+        public Builder credentials(String accessKey, String secretKey) {
+            this.accessKey = accessKey;
+            this.secretKey = secretKey;
+            return this;
+        }
+
+        /**
+         * Sets the session token of temporary credentials.
+         *
+         * @param sessionToken The session token, or null.
+         * @return This builder.
+         */
+        public Builder sessionToken(String sessionToken) {
+            this.sessionToken = sessionToken;
+            return this;
+        }
+
+        /**
+         * Chooses between path-style URLs ({@code endpoint/bucket/key}), which
+         * S3-compatible stores and local stand-ins expect, and virtual-hosted URLs
+         * ({@code bucket.endpoint/key}). The default is path style.
+         *
+         * @param pathStyle True for path-style URLs.
+         * @return This builder.
+         */
+        public Builder pathStyle(boolean pathStyle) {
+            this.pathStyle = pathStyle;
+            return this;
+        }
+
+        /**
+         * Sets how object keys are derived from the images. The default is
+         * {@link ImageInfo#suggestedFileName()}.
+         *
+         * @param keys Returns the object key of an image.
+         * @return This builder.
+         */
+        public Builder keys(Function<ImageInfo, String> keys) {
+            if (keys == null) {
+                throw new IllegalArgumentException("keys must not be null");
+            }
+            this.keys = keys;
+            return this;
+        }
+
+        /**
+         * Sets the size of the parts of a multipart upload, which is also the
+         * memory buffered per image. The default is 8 MiB.
+         *
+         * @param partSize The size in bytes, at least 5 MiB.
+         * @return This builder.
+         */
+        public Builder partSize(int partSize) {
+            if (partSize < MIN_PART_SIZE) {
+                throw new IllegalArgumentException("partSize must be at least 5 MiB");
+            }
+            this.partSize = partSize;
+            return this;
+        }
+
+        /**
+         * Sets the transport sending the requests to the store, for example an
+         * {@link OkHttpTransport} or a {@link JdkHttpTransport}. Required.
+         *
+         * @param transport The transport.
+         * @return This builder.
+         */
+        public Builder transport(Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * Builds the sink.
+         *
+         * @return The sink.
+         */
+        public S3Sink build() {
+            if (accessKey == null || secretKey == null) {
+                throw new IllegalArgumentException("credentials must be set");
+            }
+            if (transport == null) {
+                throw new IllegalArgumentException("transport must be set");
+            }
+            if (!pathStyle && endpoint.getRawPath() != null && endpoint.getRawPath().length() > 1) {
+                throw new IllegalArgumentException("virtual-hosted URLs require an endpoint without a path");
+            }
+            return new S3Sink(this);
+        }
+    }
+}
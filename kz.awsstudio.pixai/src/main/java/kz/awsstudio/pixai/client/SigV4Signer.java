@@ -0,0 +1,210 @@
+package kz.awsstudio.pixai.client;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signs requests to an S3-compatible object store with AWS Signature Version 4.
+ * Only the headers set by the signer are signed; the transport adds the others.
+ */
+final class SigV4Signer {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    static final String EMPTY_PAYLOAD_HASH = hex(sha256(new byte[0]));
+
+    private final String accessKey;
+    private final String secretKey;
+    private final String sessionToken;
+    private final String region;
+
+    /**
+     * Creates a signer.
+     *
+     * @param accessKey The access key ID.
+     * @param secretKey The secret access key.
+     * @param sessionToken The session token of temporary credentials, or null.
+     * @param region The region of the store, for example "us-east-1".
+     */
+    SigV4Signer(String accessKey, String secretKey, String sessionToken, String region) {
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.sessionToken = sessionToken;
+        this.region = region;
+    }
+
+    /**
+     * Computes the headers that authenticate a request.
+     *
+     * @param method The HTTP method.
+     * @param url The URL; its path and query must already be encoded with {@link #encode(String, boolean)}.
+     * @param payloadHash The hex SHA-256 of the body, see {@link #hashPayload(byte[])}.
+     * @param now The time of the request.
+     * @return The headers to add to the request.
+     */
+    Map<String, String> sign(String method, URI url, String payloadHash, ZonedDateTime now) {
+        String amzDate = AMZ_DATE.format(now.withZoneSameInstant(ZoneOffset.UTC));
+        String date = amzDate.substring(0, 8);
+
+        Map<String, String> signed = new TreeMap<>();
+        signed.put("host", hostHeader(url));
+        signed.put("x-amz-content-sha256", payloadHash);
+        signed.put("x-amz-date", amzDate);
+        if (sessionToken != null) {
+            signed.put("x-amz-security-token", sessionToken);
+        }
+
+        StringBuilder canonicalHeaders = new StringBuilder();
+        for (Map.Entry<String, String> header : signed.entrySet()) {
+            canonicalHeaders.append(header.getKey()).append(':').append(header.getValue().trim()).append('\n');
+        }
+        String signedHeaders = String.join(";", signed.keySet());
+        String path = url.getRawPath() == null || url.getRawPath().isEmpty() ? "/" : url.getRawPath();
+        String canonicalRequest = method + "\n" + path + "\n" + canonicalQuery(url.getRawQuery()) + "\n"
+                + canonicalHeaders + "\n" + signedHeaders + "\n" + payloadHash;
+
+        String scope = date + "/" + region + "/s3/aws4_request";
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n"
+                + hex(sha256(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+
+        byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        key = hmac(key, region);
+        key = hmac(key, "s3");
+        key = hmac(key, "aws4_request");
+        String signature = hex(hmac(key, stringToSign));
+
+        Map<String, String> headers = new TreeMap<>(signed);
+        headers.remove("host");
+        headers.put("Authorization", "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope
+                + ", SignedHeaders=" + signedHeaders + ", Signature=" + signature);
+        return headers;
+    }
+
+    /**
+     * Returns the Host header the transports send for a URL: the host, followed by
+     * the port unless it is the default port of the scheme.
+     *
+     * @param url The URL.
+     * @return The value of the Host header.
+     */
+    private static String hostHeader(URI url) {
+        int port = url.getPort();
+        boolean defaultPort = port == -1 || ("https".equalsIgnoreCase(url.getScheme()) && port == 443)
+                || ("http".equalsIgnoreCase(url.getScheme()) && port == 80);
+        return defaultPort ? url.getHost() : url.getHost() + ":" + port;
+    }
+
+    /**
+     * Computes the payload hash of a body.
+     *
+     * @param body The body, or null for an empty body.
+     * @return The hex SHA-256 of the body.
+     */
+    static String hashPayload(byte[] body) {
+        return body == null || body.length == 0 ? EMPTY_PAYLOAD_HASH : hex(sha256(body));
+    }
+
+    /**
+     * Encodes a path or query component as required by Signature Version 4.
+     *
+     * @param value The raw value.
+     * @param keepSlash True to leave '/' as is, for object keys in a path.
+     * @return The encoded value.
+     */
+    static String encode(String value, boolean keepSlash) {
+        StringBuilder encoded = new StringBuilder(value.length());
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || (keepSlash && c == '/')) {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(Character.toUpperCase(HEX[(b >> 4) & 0xf])).append(Character.toUpperCase(HEX[b & 0xf]));
+            }
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Sorts an encoded query string by parameter name.
+     *
+     * @param rawQuery The encoded query, or null.
+     * @return The canonical query string.
+     */
+    private static String canonicalQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return "";
+        }
+        Map<String, String> parameters = new TreeMap<>();
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            parameters.put(equals < 0 ? parameter : parameter.substring(0, equals), equals < 0 ? "" : parameter.substring(equals + 1));
+        }
+        StringBuilder query = new StringBuilder();
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            if (query.length() > 0) {
+                query.append('&');
+            }
+            query.append(parameter.getKey()).append('=').append(parameter.getValue());
+        }
+        return query.toString();
+    }
+
+    /**
+     * Computes an HMAC-SHA256.
+     *
+     * @param key The key.
+     * @param data The text to authenticate.
+     * @return The MAC.
+     */
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    /**
+     * Computes a SHA-256 digest.
+     *
+     * @param data The data.
+     * @return The digest.
+     */
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Formats bytes as lowercase hex.
+     *
+     * @param bytes The bytes.
+     * @return The hex text.
+     */
+    static String hex(byte[] bytes) {
+        char[] text = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            text[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            text[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(text);
+    }
+}
@@ -0,0 +1,186 @@
+package kz.awsstudio.pixai.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Queue in front of task creation that caps the number of concurrent
+ * server-side tasks and hands out the free slots by priority lane.
+ * <p>
+ * The highest non-empty lane is normally served first. To keep lower lanes from
+ * starving, every waiting lower lane earns {@code minimumShare} credit per
+ * dispatched slot; a lane whose credit reaches one is served next regardless of
+ * priority. Lanes lose their credit when they run empty.
+ */
+final class SubmissionQueue {
+
+    /**
+     * A slot for one server-side task. The slot must be released once the task
+     * has reached a final status or could not be created.
+     */
+    interface Slot {
+
+        /**
+         * Returns the slot to the queue. Calling it more than once has no effect.
+         */
+        void release();
+    }
+
+    private final Priority[] lanes = Priority.values();
+    private final List<ArrayDeque<CompletableFuture<Slot>>> waiting = new ArrayList<>();
+    private final double[] credits = new double[lanes.length];
+    private int maxActive;
+    private double minimumShare;
+    private int active;
+
+    /**
+     * Creates a queue.
+     *
+     * @param maxActive The maximum number of concurrent server-side tasks.
+     * @param minimumShare The guaranteed share of the slots for each lower lane, between 0 and 1.
+     */
+    SubmissionQueue(int maxActive, double minimumShare) {
+        for (int i = 0; i < lanes.length; i++) {
+            waiting.add(new ArrayDeque<>());
+        }
+        setMaxActive(maxActive);
+        setMinimumShare(minimumShare);
+    }
+
+    /**
+     * Sets the maximum number of concurrent server-side tasks.
+     *
+     * @param maxActive The maximum, at least 1.
+     */
+    void setMaxActive(int maxActive) {
+        if (maxActive < 1) {
+            throw new IllegalArgumentException("maxActive must be at least 1");
+        }
+        synchronized (this) {
+            this.maxActive = maxActive;
+        }
+        dispatch();
+    }
+
+    /**
+     * Sets the guaranteed share of the slots for each lane below the highest one.
+     *
+     * @param minimumShare The share, between 0 and 1.
+     */
+    synchronized void setMinimumShare(double minimumShare) {
+        if (minimumShare < 0 || minimumShare > 1) {
+            throw new IllegalArgumentException("minimumShare must be between 0 and 1");
+        }
+        this.minimumShare = minimumShare;
+    }
+
+    /**
+     * Requests a slot for a new server-side task.
+     *
+     * @param priority The lane of the request.
+     * @return A future completed with the slot once it is granted. Cancelling the
+     *         future withdraws the request.
+     */
+    CompletableFuture<Slot> acquire(Priority priority) {
+        CompletableFuture<Slot> request = new CompletableFuture<>();
+        synchronized (this) {
+            waiting.get(priority.ordinal()).addLast(request);
+        }
+        dispatch();
+        return request;
+    }
+
+    /**
+     * Grants free slots to waiting requests. The futures are completed outside
+     * the lock, since completing them runs the dependent stages.
+     */
+    private void dispatch() {
+        while (true) {
+            CompletableFuture<Slot> next;
+            synchronized (this) {
+                if (active >= maxActive) {
+                    return;
+                }
+                next = pollNext();
+                if (next == null) {
+                    return;
+                }
+                active++;
+            }
+            if (!next.complete(new GrantedSlot())) {
+                releaseSlot();
+            }
+        }
+    }
+
+    /**
+     * Picks the next request to serve. Must be called while holding the lock.
+     *
+     * @return The request, or null if no request is waiting.
+     */
+    private CompletableFuture<Slot> pollNext() {
+        for (int i = 0; i < lanes.length; i++) {
+            while (!waiting.get(i).isEmpty() && waiting.get(i).peekFirst().isDone()) {
+                waiting.get(i).pollFirst();
+            }
+        }
+
+        int lane = -1;
+        for (int i = 1; i < lanes.length; i++) {
+            if (!waiting.get(i).isEmpty() && credits[i] >= 1) {
+                lane = i;
+                credits[i] -= 1;
+                break;
+            }
+        }
+        if (lane < 0) {
+            for (int i = 0; i < lanes.length; i++) {
+                if (!waiting.get(i).isEmpty()) {
+                    lane = i;
+                    break;
+                }
+            }
+        }
+        if (lane < 0) {
+            return null;
+        }
+
+        CompletableFuture<Slot> next = waiting.get(lane).pollFirst();
+        for (int i = 1; i < lanes.length; i++) {
+            if (waiting.get(i).isEmpty()) {
+                credits[i] = 0;
+            } else if (i != lane) {
+                credits[i] += minimumShare;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Frees a slot and serves the next waiting request.
+     */
+    private void releaseSlot() {
+        synchronized (this) {
+            active--;
+        }
+        dispatch();
+    }
+
+    /**
+     * A granted slot.
+     */
+    private final class GrantedSlot implements Slot {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        @Override
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                releaseSlot();
+            }
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Client-wide scheduler that tracks every outstanding generation task.
+ * Instead of a sleeping thread per task, all task IDs are kept in a delay queue
+ * ordered by the time of their next status check. A single periodic tick on the
+ * shared scheduler drains the tasks that are due and checks them in batches of
+ * up to {@code batchSize} tasks per request; final statuses are delivered
+ * through futures. When each task is checked is decided by a
+ * {@link PollTimingModel} that learns from the completed tasks, limited by the
+ * deadline of the task: a task still running at its deadline fails with a
+ * {@link DeadlineExceededException} instead of being checked again.
+ * <p>
+ * A failed status request, an answer that cannot be parsed or a task missing
+ * from the answer does not fail the tasks of the batch: they are checked again
+ * with an exponential backoff, and a task only fails when the answer reports an
+ * error for that task or after {@code MAX_FAILED_CHECKS} failed checks in a row.
+ * <p>
+ * Tasks that were pushed as completed or that have passed their predicted
+ * completion are passed to the source as likely completed, so the check that
+ * sees them final can carry their media as well.
+ * <p>
+ * Final statuses can also be pushed through {@link #onStatus(String, String)};
+ * a pushed completion triggers an immediate check of that task, which confirms
+ * the status before the future completes.
+ * While push updates are active, tasks are only polled every
+ * {@code PUSH_SAFETY_MILLIS} as a safety net; as soon as push is reported
+ * inactive, the regular interval applies again.
+ */
+final class TaskPoller {
+
+    /**
+     * Source of task states, usually a GraphQL query against the PixAI API.
+     */
+    interface StatusSource {
+
+        /**
+         * Fetches the current state of several tasks with a single request.
+         *
+         * @param taskIds The IDs of the generation tasks.
+         * @param likelyCompleted The IDs of the tasks that have probably finished; the
+         *        source should fetch their media with the same request.
+         * @return A future completed with the current state of each task, keyed by task ID.
+         *         Tasks missing from the map are checked again later; a task whose
+         *         query failed is reported with {@link TaskSnapshot#failed(String, String)}.
+         */
+        CompletableFuture<Map<String, TaskSnapshot>> fetchStatuses(List<String> taskIds, Set<String> likelyCompleted);
+    }
+
+    private static final long TICK_MILLIS = 100;
+    private static final long PUSH_SAFETY_MILLIS = 30000;
+    private static final int MAX_FAILED_CHECKS = 5;
+    private static final long RETRY_BASE_MILLIS = 1000;
+    private static final long RETRY_MAX_MILLIS = 30000;
+
+    private final StatusSource source;
+    private final ScheduledExecutorService scheduler;
+    private final PollTimingModel timing;
+    private volatile int batchSize;
+    private final DelayQueue<Entry> queue = new DelayQueue<>();
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean pushActive;
+    private ScheduledFuture<?> tick;
+    private int watched;
+
+    /**
+     * Creates a poller.
+     *
+     * @param source The source of task statuses.
+     * @param scheduler The scheduler driving the periodic tick.
+     * @param timing The model deciding when each task is checked.
+     * @param batchSize The maximum number of tasks checked by a single request.
+     */
+    TaskPoller(StatusSource source, ScheduledExecutorService scheduler, PollTimingModel timing, int batchSize) {
+        this.source = source;
+        this.scheduler = scheduler;
+        this.timing = timing;
+        setBatchSize(batchSize);
+    }
+
+    /**
+     * Sets the maximum number of tasks checked by a single request.
+     *
+     * @param batchSize The batch size, at least 1.
+     */
+    void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Starts tracking a task until it reaches a final status.
+     * The first status check is scheduled near the predicted completion time
+     * of the parameter class.
+     *
+     * @param taskId The ID of the generation task.
+     * @param parameterClass The parameter class of the generation, see {@link PollTimingModel#classify}.
+     * @param observer Receives every state returned by a status check of the task, may be null.
+     * @param deadline The time by which the task must be final.
+     * @return A future completed with the final state of the task ("completed", "failed", "cancelled").
+     *         Cancelling the future stops the polling of the task.
+     */
+    CompletableFuture<TaskSnapshot> watch(String taskId, String parameterClass, Consumer<TaskSnapshot> observer, Deadline deadline) {
+        Entry entry = new Entry(taskId, parameterClass, observer, deadline);
+        entry.dueAt = deadline.clamp(entry.submittedAt + TimeUnit.MILLISECONDS.toNanos(timing.nextDelayMillis(parameterClass, 0)));
+        Entry existing = entries.putIfAbsent(taskId, entry);
+        if (existing != null) {
+            return existing.future;
+        }
+        synchronized (this) {
+            watched++;
+            if (tick == null) {
+                tick = scheduler.scheduleWithFixedDelay(this::tick, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        entry.future.whenComplete((snapshot, error) -> {
+            entries.remove(taskId, entry);
+            release();
+            if (snapshot != null && "completed".equals(snapshot.getStatus()) && entry.completedAt != 0) {
+                timing.record(parameterClass, TimeUnit.NANOSECONDS.toMillis(entry.completedAt - entry.submittedAt));
+            }
+        });
+        queue.add(entry);
+        return entry.future;
+    }
+
+    /**
+     * Delivers a status pushed by the server for a task.
+     *
+     * @param taskId The ID of the generation task.
+     * @param status The new status of the task.
+     */
+    void onStatus(String taskId, String status) {
+        Entry entry = entries.get(taskId);
+        if (entry == null || !isFinal(status)) {
+            return;
+        }
+        if ("completed".equals(status)) {
+            entry.pushedAt = System.nanoTime();
+            check(Collections.singletonList(entry), false);
+        } else {
+            entry.future.complete(new TaskSnapshot(taskId, status, null, null));
+        }
+    }
+
+    /**
+     * Tells the poller whether statuses are currently pushed through {@link #onStatus(String, String)}.
+     *
+     * @param active True while push updates are received.
+     */
+    void setPushActive(boolean active) {
+        this.pushActive = active;
+    }
+
+    /**
+     * Returns the number of tasks that have not reached a final status yet.
+     *
+     * @return The number of tracked tasks.
+     */
+    synchronized int pendingCount() {
+        return watched;
+    }
+
+    /**
+     * Drains the due tasks and checks them in batches.
+     */
+    private void tick() {
+        List<Entry> due = new ArrayList<>();
+        queue.drainTo(due);
+
+        long now = System.nanoTime();
+        long safetyNanos = TimeUnit.MILLISECONDS.toNanos(PUSH_SAFETY_MILLIS);
+        List<Entry> batch = new ArrayList<>();
+        for (Entry entry : due) {
+            if (entry.future.isDone()) {
+                continue;
+            }
+            if (entry.deadline.isExpired()) {
+                entry.future.completeExceptionally(new DeadlineExceededException("Deadline exceeded while waiting for task " + entry.taskId));
+                continue;
+            }
+            if (pushActive && now - entry.checkedAt < safetyNanos) {
+                reschedule(entry, now);
+                continue;
+            }
+            entry.checkedAt = now;
+            batch.add(entry);
+            if (batch.size() == batchSize) {
+                check(batch, true);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            check(batch, true);
+        }
+    }
+
+    /**
+     * Performs one batched status check and schedules the next one for the tasks
+     * that are still running.
+     *
+     * @param batch The tracked tasks to check.
+     * @param requeue True if the tasks were taken from the queue and must be put back while running.
+     */
+    private void check(List<Entry> batch, boolean requeue) {
+        List<String> taskIds = new ArrayList<>(batch.size());
+        Set<String> likelyCompleted = new HashSet<>();
+        long start = System.nanoTime();
+        for (Entry entry : batch) {
+            taskIds.add(entry.taskId);
+            if (entry.pushedAt != 0
+                    || timing.likelyCompleted(entry.parameterClass, TimeUnit.NANOSECONDS.toMillis(start - entry.submittedAt))) {
+                likelyCompleted.add(entry.taskId);
+            }
+        }
+
+        CompletableFuture<Map<String, TaskSnapshot>> statuses;
+        try {
+            statuses = source.fetchStatuses(taskIds, likelyCompleted);
+        } catch (RuntimeException e) {
+            statuses = new CompletableFuture<>();
+            statuses.completeExceptionally(e);
+        }
+        statuses.whenComplete((values, error) -> {
+            long now = System.nanoTime();
+            for (Entry entry : batch) {
+                if (entry.future.isDone()) {
+                    continue;
+                }
+                TaskSnapshot snapshot = error == null ? values.get(entry.taskId) : null;
+                if (snapshot == null) {
+                    // The whole check failed or skipped the task; a pushed check leaves the task queued as it is.
+                    if (requeue) {
+                        retry(entry, now, error != null ? error : new IOException("Task not found: " + entry.taskId));
+                    }
+                    continue;
+                }
+                if (snapshot.getError() != null) {
+                    entry.future.completeExceptionally(new IOException("Status check of task " + entry.taskId + " failed: " + snapshot.getError()));
+                    continue;
+                }
+                entry.failedChecks = 0;
+                if (entry.observer != null) {
+                    entry.observer.accept(snapshot);
+                }
+                if (snapshot.isFinal()) {
+                    entry.completedAt = completionTime(entry, now);
+                    entry.future.complete(snapshot);
+                } else {
+                    entry.runningAt = now;
+                    if (requeue) {
+                        reschedule(entry, now);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Estimates when a task completed on the server. A pushed status is taken as
+     * the time of completion; otherwise the task completed between the last check
+     * that saw it running and the check that saw it final, so the middle of that
+     * interval is used instead of the time of the check.
+     *
+     * @param entry The tracked task.
+     * @param now The time of the check that saw the task final.
+     * @return The estimated time of completion, in {@link System#nanoTime()} units.
+     */
+    private static long completionTime(Entry entry, long now) {
+        long pushedAt = entry.pushedAt;
+        if (pushedAt != 0) {
+            return pushedAt;
+        }
+        return entry.runningAt + (now - entry.runningAt) / 2;
+    }
+
+    /**
+     * Puts a task back into the queue after a failed check, with a delay that
+     * doubles with each failure in a row, or fails it once the retries are used up.
+     *
+     * @param entry The tracked task.
+     * @param now The current value of {@link System#nanoTime()}.
+     * @param error The reason the check failed.
+     */
+    private void retry(Entry entry, long now, Throwable error) {
+        entry.failedChecks++;
+        if (entry.failedChecks > MAX_FAILED_CHECKS) {
+            entry.future.completeExceptionally(error);
+            return;
+        }
+        long backoff = Math.min(RETRY_BASE_MILLIS << (entry.failedChecks - 1), RETRY_MAX_MILLIS);
+        entry.dueAt = entry.deadline.clamp(now + TimeUnit.MILLISECONDS.toNanos(backoff));
+        queue.add(entry);
+    }
+
+    /**
+     * Puts a task back into the queue with the delay suggested by the timing model.
+     *
+     * @param entry The tracked task.
+     * @param now The current value of {@link System#nanoTime()}.
+     */
+    private void reschedule(Entry entry, long now) {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(now - entry.submittedAt);
+        entry.dueAt = entry.deadline.clamp(now + TimeUnit.MILLISECONDS.toNanos(timing.nextDelayMillis(entry.parameterClass, elapsed)));
+        queue.add(entry);
+    }
+
+    /**
+     * Stops the periodic tick once no task is tracked anymore, so an idle client
+     * does not keep the scheduler busy.
+     */
+    private synchronized void release() {
+        watched--;
+        if (watched == 0 && tick != null) {
+            tick.cancel(false);
+            tick = null;
+        }
+    }
+
+    /**
+     * Checks whether the status is final.
+     *
+     * @param status The status of the task.
+     * @return True if the task will not change its status anymore.
+     */
+    static boolean isFinal(String status) {
+        return "completed".equals(status) || "failed".equals(status) || "cancelled".equals(status);
+    }
+
+    /**
+     * A tracked task ordered by the time of its next status check.
+     */
+    private static final class Entry implements Delayed {
+
+        private final String taskId;
+        private final String parameterClass;
+        private final Consumer<TaskSnapshot> observer;
+        private final Deadline deadline;
+        private final CompletableFuture<TaskSnapshot> future = new CompletableFuture<>();
+        private final long submittedAt = System.nanoTime();
+        private volatile long dueAt = submittedAt;
+        private long checkedAt = submittedAt - TimeUnit.DAYS.toNanos(1);
+        private int failedChecks;
+        private volatile long runningAt = submittedAt;
+        private volatile long pushedAt;
+        private long completedAt;
+
+        private Entry(String taskId, String parameterClass, Consumer<TaskSnapshot> observer, Deadline deadline) {
+            this.taskId = taskId;
+            this.parameterClass = parameterClass;
+            this.observer = observer;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
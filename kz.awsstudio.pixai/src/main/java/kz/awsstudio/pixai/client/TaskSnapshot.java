@@ -0,0 +1,135 @@
+package kz.awsstudio.pixai.client;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * State of a generation task as returned by a single status check.
+ * Status checks carry the status, and the media ID and the download URL when
+ * the check selected the media of a task that is likely completed; otherwise
+ * they are added by the query that resolves the media of the completed task.
+ */
+final class TaskSnapshot {
+
+    private final String taskId;
+    private final String status;
+    private final String mediaId;
+    private final String downloadUrl;
+    private final String error;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param taskId The ID of the generation task.
+     * @param status The status of the task.
+     * @param mediaId The media ID of the output, or null if not known.
+     * @param downloadUrl The URL of the output image, or null if not known.
+     */
+    TaskSnapshot(String taskId, String status, String mediaId, String downloadUrl) {
+        this(taskId, status, mediaId, downloadUrl, null);
+    }
+
+    private TaskSnapshot(String taskId, String status, String mediaId, String downloadUrl, String error) {
+        this.taskId = taskId;
+        this.status = status;
+        this.mediaId = mediaId;
+        this.downloadUrl = downloadUrl;
+        this.error = error;
+    }
+
+    /**
+     * Creates the snapshot of a task whose status query reported an error.
+     *
+     * @param taskId The ID of the generation task.
+     * @param error The error message of the server.
+     * @return The snapshot, without a status.
+     */
+    static TaskSnapshot failed(String taskId, String error) {
+        return new TaskSnapshot(taskId, null, null, null, error);
+    }
+
+    /**
+     * Reads a snapshot from a task object of a status or completion query
+     * ({@code task { id status outputs media { urls { variant url } } }}).
+     * The outputs and the media are optional.
+     *
+     * @param taskId The ID of the generation task.
+     * @param task The task object of the response.
+     * @return The snapshot.
+     */
+    static TaskSnapshot parse(String taskId, JSONObject task) {
+        String mediaId = null;
+        JSONObject outputs = task.optJSONObject("outputs");
+        if (outputs != null) {
+            mediaId = outputs.optString("mediaId", null);
+        }
+
+        String downloadUrl = null;
+        JSONObject media = task.optJSONObject("media");
+        JSONArray urls = media == null ? null : media.optJSONArray("urls");
+        if (urls != null) {
+            for (int i = 0; i < urls.length(); i++) {
+                JSONObject urlObj = urls.optJSONObject(i);
+                if (urlObj != null && urlObj.has("url")) {
+                    downloadUrl = urlObj.getString("url");
+                    break;
+                }
+            }
+        }
+        return new TaskSnapshot(taskId, task.getString("status"), mediaId, downloadUrl);
+    }
+
+    /**
+     * Returns the ID of the generation task.
+     *
+     * @return The task ID.
+     */
+    String getTaskId() {
+        return taskId;
+    }
+
+    /**
+     * Returns the status of the task.
+     *
+     * @return The status.
+     */
+    String getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the media ID of the output.
+     *
+     * @return The media ID, or null if not known.
+     */
+    String getMediaId() {
+        return mediaId;
+    }
+
+    /**
+     * Returns the URL of the output image.
+     *
+     * @return The download URL, or null if not known.
+     */
+    String getDownloadUrl() {
+        return downloadUrl;
+    }
+
+    /**
+     * Returns the error the server reported for the status query of the task.
+     *
+     * @return The error message, or null if the task was found.
+     */
+    String getError() {
+        return error;
+    }
+
+    /**
+     * Checks whether the task will not change its status anymore.
+     *
+     * @return True if the status is "completed", "failed" or "cancelled".
+     */
+    boolean isFinal() {
+        return TaskPoller.isFinal(status);
+    }
+}
@@ -0,0 +1,360 @@
+package kz.awsstudio.pixai.client;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Single multiplexed WebSocket connection (GraphQL over WebSocket, graphql-transport-ws
+ * protocol) that receives status updates for every task of the account.
+ * Updates are forwarded to a listener; when the socket drops, the listener is told
+ * so it can fall back to polling, and a reconnect is scheduled while tasks are still in flight.
+ * <p>
+ * Reconnects back off exponentially with jitter, from {@code RECONNECT_DELAY_MILLIS}
+ * after the first failure up to {@code MAX_RECONNECT_DELAY_MILLIS}, until a
+ * subscription delivers again. After {@code MAX_REJECTIONS} rejections in a row
+ * (an error message for the subscription, or an unauthorized or forbidden close)
+ * the subscription gives up for good and the tasks are left to polling.
+ * <p>
+ * The protocol does not acknowledge a subscribe message, so the subscription only
+ * counts as active once the server has delivered the first event on it.
+ * The connection is held while tasks are in flight, see {@link #acquire()}, and
+ * closed once it has been idle for {@code IDLE_CLOSE_MILLIS}.
+ */
+final class TaskSubscription {
+
+    /**
+     * Receiver of the events of the subscription.
+     */
+    interface Listener {
+
+        /**
+         * Called when the server reports a new status for a task.
+         *
+         * @param taskId The ID of the generation task.
+         * @param status The new status of the task.
+         */
+        void onTaskUpdated(String taskId, String status);
+
+        /**
+         * Called when the subscription is established or lost.
+         *
+         * @param active True if updates are being received.
+         */
+        void onActiveChanged(boolean active);
+    }
+
+    private static final String SUBSCRIPTION_QUERY = "subscription PersonalEvents { personalEvents { taskUpdated { id status } } }";
+    private static final String SUBSCRIPTION_ID = "1";
+    private static final Logger LOGGER = Logger.getLogger(TaskSubscription.class.getName());
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 5 * 60000;
+    private static final int MAX_REJECTIONS = 3;
+    private static final long IDLE_CLOSE_MILLIS = 30000;
+
+    private final URI uri;
+    private final String apiKey;
+    private final Listener listener;
+    private final ScheduledExecutorService scheduler;
+    private final long idleCloseMillis;
+    private final long reconnectDelayMillis;
+    private WebSocketClient socket;
+    private ScheduledFuture<?> idleClose;
+    private ScheduledFuture<?> reconnect;
+    private int users;
+    private int failures;
+    private int rejections;
+    private boolean stopped;
+    private volatile boolean active;
+
+    /**
+     * Creates a subscription; no connection is opened until {@link #acquire()} is called.
+     *
+     * @param uri The WebSocket endpoint of the PixAI API.
+     * @param apiKey API key for accessing the PixAI API.
+     * @param listener The receiver of the task updates.
+     * @param scheduler The scheduler used for reconnect attempts and for closing the idle connection.
+     */
+    TaskSubscription(URI uri, String apiKey, Listener listener, ScheduledExecutorService scheduler) {
+        this(uri, apiKey, listener, scheduler, IDLE_CLOSE_MILLIS, RECONNECT_DELAY_MILLIS);
+    }
+
+    /**
+     * Creates a subscription with a custom idle time and reconnect delay.
+     *
+     * @param uri The WebSocket endpoint of the PixAI API.
+     * @param apiKey API key for accessing the PixAI API.
+     * @param listener The receiver of the task updates.
+     * @param scheduler The scheduler used for reconnect attempts and for closing the idle connection.
+     * @param idleCloseMillis How long the connection stays open after the last task is released.
+     * @param reconnectDelayMillis The delay of the first reconnect, which doubles with every further failure.
+     */
+    TaskSubscription(URI uri, String apiKey, Listener listener, ScheduledExecutorService scheduler, long idleCloseMillis,
+            long reconnectDelayMillis) {
+        this.uri = uri;
+        this.apiKey = apiKey;
+        this.listener = listener;
+        this.scheduler = scheduler;
+        this.idleCloseMillis = idleCloseMillis;
+        this.reconnectDelayMillis = reconnectDelayMillis;
+    }
+
+    /**
+     * Registers a task in flight and opens the connection if it is not open or
+     * opening already, and no reconnect is pending.
+     * Every call must be followed by one call of {@link #release()}.
+     */
+    synchronized void acquire() {
+        users++;
+        if (idleClose != null) {
+            idleClose.cancel(false);
+            idleClose = null;
+        }
+        if (socket == null && reconnect == null && !stopped) {
+            connect();
+        }
+    }
+
+    /**
+     * Unregisters a task in flight. Once no task is left, the connection is
+     * closed after the idle time unless another task arrives meanwhile.
+     */
+    synchronized void release() {
+        if (users > 0 && --users == 0 && socket != null && !stopped) {
+            idleClose = scheduler.schedule(this::closeIfIdle, idleCloseMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Closes the connection for good and stops reconnecting.
+     */
+    synchronized void stop() {
+        stopped = true;
+        if (idleClose != null) {
+            idleClose.cancel(false);
+            idleClose = null;
+        }
+        if (reconnect != null) {
+            reconnect.cancel(false);
+            reconnect = null;
+        }
+        disconnect();
+    }
+
+    /**
+     * Checks whether task updates are currently being received.
+     *
+     * @return True if the subscription is established.
+     */
+    boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Closes the connection if still no task is in flight.
+     */
+    private synchronized void closeIfIdle() {
+        idleClose = null;
+        if (users == 0) {
+            disconnect();
+        }
+    }
+
+    /**
+     * Closes the current connection without scheduling a reconnect.
+     * Must be called while holding the lock.
+     */
+    private void disconnect() {
+        WebSocketClient closing = socket;
+        socket = null;
+        if (closing != null) {
+            closing.close();
+        }
+        setActive(false);
+    }
+
+    /**
+     * Opens a new connection. Must be called while holding the lock.
+     */
+    private void connect() {
+        Draft_6455 draft = new Draft_6455(Collections.emptyList(),
+                Collections.<IProtocol>singletonList(new Protocol("graphql-transport-ws")));
+        WebSocketClient client = new Connection(uri, draft, apiKey);
+        socket = client;
+        client.connect();
+    }
+
+    /**
+     * Forgets a closed connection and schedules a reconnect while tasks are in
+     * flight, or gives up after repeated rejections.
+     *
+     * @param closed The connection that was closed.
+     * @param rejected True if the server rejected the subscription or the credentials.
+     */
+    private synchronized void onClosed(WebSocketClient closed, boolean rejected) {
+        if (socket != closed) {
+            return;
+        }
+        socket = null;
+        setActive(false);
+        if (stopped) {
+            return;
+        }
+        if (rejected && ++rejections >= MAX_REJECTIONS) {
+            stopped = true;
+            LOGGER.warning(() -> "Task subscription rejected " + rejections + " times in a row, falling back to polling for good");
+            return;
+        }
+        if (users > 0) {
+            long delay = backoffMillis(reconnectDelayMillis, failures++);
+            reconnect = scheduler.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Reconnects unless the subscription was stopped, went idle or was restarted meanwhile.
+     */
+    private synchronized void reconnect() {
+        reconnect = null;
+        if (users > 0 && !stopped && socket == null) {
+            connect();
+        }
+    }
+
+    /**
+     * Computes the delay of a reconnect: the base delay doubled for every earlier
+     * failure, capped at {@code MAX_RECONNECT_DELAY_MILLIS}, of which a random part
+     * of up to one half is taken off so that clients do not reconnect in step.
+     *
+     * @param baseMillis The delay of the first reconnect.
+     * @param failures The number of failed connections since the subscription last delivered.
+     * @return The delay in milliseconds.
+     */
+    static long backoffMillis(long baseMillis, int failures) {
+        long delay = Math.min(baseMillis << Math.min(failures, 20), Math.max(baseMillis, MAX_RECONNECT_DELAY_MILLIS));
+        return delay - ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Marks the subscription active once the server delivers on it, unless the
+     * connection was replaced meanwhile.
+     *
+     * @param client The connection that received the event.
+     */
+    private synchronized void onConfirmed(WebSocketClient client) {
+        if (socket == client) {
+            failures = 0;
+            rejections = 0;
+            setActive(true);
+        }
+    }
+
+    /**
+     * Updates the active flag and notifies the listener of changes.
+     * Must be called while holding the lock.
+     *
+     * @param value The new value of the flag.
+     */
+    private void setActive(boolean value) {
+        if (active != value) {
+            active = value;
+            listener.onActiveChanged(value);
+        }
+    }
+
+    /**
+     * Handles a message of the graphql-transport-ws protocol.
+     *
+     * @param client The connection that received the message.
+     * @param message The raw message.
+     */
+    private void onMessage(Connection client, String message) {
+        JSONObject json = new JSONObject(message);
+        String type = json.optString("type", "");
+        switch (type) {
+            case "connection_ack":
+                JSONObject subscribe = new JSONObject();
+                subscribe.put("id", SUBSCRIPTION_ID);
+                subscribe.put("type", "subscribe");
+                subscribe.put("payload", new JSONObject().put("query", SUBSCRIPTION_QUERY));
+                client.send(subscribe.toString());
+                break;
+            case "next":
+                if (!SUBSCRIPTION_ID.equals(json.optString("id"))) {
+                    break;
+                }
+                onConfirmed(client);
+                JSONObject data = json.getJSONObject("payload").optJSONObject("data");
+                JSONObject events = data == null ? null : data.optJSONObject("personalEvents");
+                JSONObject task = events == null ? null : events.optJSONObject("taskUpdated");
+                if (task != null) {
+                    listener.onTaskUpdated(task.getString("id"), task.getString("status"));
+                }
+                break;
+            case "ping":
+                client.send(new JSONObject().put("type", "pong").toString());
+                break;
+            case "error":
+                client.rejected = true;
+                client.close();
+                break;
+            case "complete":
+                client.close();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * The WebSocket connection of the subscription.
+     */
+    private final class Connection extends WebSocketClient {
+
+        private volatile boolean rejected;
+
+        private Connection(URI serverUri, Draft_6455 draft, String token) {
+            super(serverUri, draft, Collections.singletonMap("Authorization", "Bearer " + token));
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+            JSONObject init = new JSONObject();
+            init.put("type", "connection_init");
+            init.put("payload", new JSONObject().put("token", apiKey));
+            send(init.toString());
+        }
+
+        @Override
+        public void onMessage(String message) {
+            try {
+                TaskSubscription.this.onMessage(this, message);
+            } catch (JSONException e) {
+                close();
+            }
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            // 4401 and 4403 are the Unauthorized and Forbidden closes of graphql-transport-ws.
+            onClosed(this, rejected || code == 4401 || code == 4403);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            // onClose follows every fatal error, the fallback to polling happens there.
+        }
+    }
+}
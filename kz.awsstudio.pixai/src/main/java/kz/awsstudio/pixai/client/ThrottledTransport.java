@@ -0,0 +1,143 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Transport} decorator capping the bandwidth of all response bodies
+ * together with a token bucket holding up to one second of traffic.
+ * Readers that exceed the cap sleep until enough tokens have accumulated.
+ */
+final class ThrottledTransport implements Transport {
+
+    private final Transport delegate;
+    private final long bytesPerSecond;
+    private final int maxChunk;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    /**
+     * Creates a throttled transport.
+     *
+     * @param delegate The transport sending the requests.
+     * @param bytesPerSecond The bandwidth cap.
+     */
+    ThrottledTransport(Transport delegate, long bytesPerSecond) {
+        this.delegate = delegate;
+        this.bytesPerSecond = bytesPerSecond;
+        this.maxChunk = (int) Math.max(1, Math.min(65536, bytesPerSecond / 10));
+        this.tokens = bytesPerSecond;
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> send(TransportRequest request) {
+        CompletableFuture<TransportResponse> sent = delegate.send(request);
+        CompletableFuture<TransportResponse> result = sent.thenApply(ThrottledResponse::new);
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                sent.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Takes tokens for a read from the bucket, going into debt if needed.
+     *
+     * @param bytes The number of bytes read.
+     * @return The time to wait until the debt is paid off, in nanoseconds.
+     */
+    private synchronized long take(int bytes) {
+        long now = System.nanoTime();
+        tokens = Math.min(bytesPerSecond, tokens + (now - refilledAt) * bytesPerSecond / 1e9);
+        refilledAt = now;
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / bytesPerSecond);
+    }
+
+    /**
+     * Waits until a read is covered by the bucket.
+     *
+     * @param bytes The number of bytes read.
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     */
+    private void pace(int bytes) throws InterruptedIOException {
+        long waitNanos = take(bytes);
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling a download");
+            }
+        }
+    }
+
+    /**
+     * Response whose body is read through the bucket.
+     */
+    private final class ThrottledResponse implements TransportResponse {
+
+        private final TransportResponse response;
+        private InputStream body;
+
+        private ThrottledResponse(TransportResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public int code() {
+            return response.code();
+        }
+
+        @Override
+        public String header(String name) {
+            return response.header(name);
+        }
+
+        @Override
+        public long contentLength() {
+            return response.contentLength();
+        }
+
+        @Override
+        public synchronized InputStream body() {
+            if (body == null) {
+                body = new FilterInputStream(response.body()) {
+                    @Override
+                    public int read() throws IOException {
+                        int b = super.read();
+                        if (b != -1) {
+                            pace(1);
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) throws IOException {
+                        int read = super.read(buffer, offset, Math.min(length, maxChunk));
+                        if (read > 0) {
+                            pace(read);
+                        }
+                        return read;
+                    }
+                };
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+
+        @Override
+        public String toString() {
+            return response.toString();
+        }
+    }
+}
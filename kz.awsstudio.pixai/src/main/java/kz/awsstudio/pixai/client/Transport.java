@@ -0,0 +1,25 @@
+package kz.awsstudio.pixai.client;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * HTTP layer used by {@link PixAIClient} for the GraphQL requests and the image downloads.
+ * The client ships with {@link OkHttpTransport}, the default, and {@link JdkHttpTransport},
+ * which runs on {@code java.net.http.HttpClient} and needs no third-party HTTP library.
+ * <p>
+ * Implementations must be thread-safe and must not block the calling thread.
+ */
+public interface Transport {
+
+    /**
+     * Sends a request asynchronously.
+     * The returned future is completed as soon as the response headers have arrived;
+     * the body is read from the response afterwards. Cancelling the future should
+     * abort the exchange.
+     *
+     * @param request The request to send.
+     * @return A future completed with the response, or completed exceptionally
+     *         with an {@link java.io.IOException} if the request fails.
+     */
+    CompletableFuture<TransportResponse> send(TransportRequest request);
+}
@@ -0,0 +1,233 @@
+package kz.awsstudio.pixai.client;
+
+import java.time.Duration;
+
+/**
+ * Connection settings of one class of HTTP traffic.
+ * {@link PixAIClient} keeps image downloads on their own profile, with a separate
+ * connection pool and request limits, so that many large downloads cannot hold up
+ * the small, latency-sensitive GraphQL requests of task creation and polling.
+ */
+public final class TransportProfile {
+
+    private final int maxIdleConnections;
+    private final Duration keepAlive;
+    private final int maxRequests;
+    private final int maxRequestsPerHost;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final Duration callTimeout;
+    private final long maxBytesPerSecond;
+
+    private TransportProfile(Builder builder) {
+        this.maxIdleConnections = builder.maxIdleConnections;
+        this.keepAlive = builder.keepAlive;
+        this.maxRequests = builder.maxRequests;
+        this.maxRequestsPerHost = builder.maxRequestsPerHost;
+        this.connectTimeout = builder.connectTimeout;
+        this.readTimeout = builder.readTimeout;
+        this.callTimeout = builder.callTimeout;
+        this.maxBytesPerSecond = builder.maxBytesPerSecond;
+    }
+
+    /**
+     * Creates a builder with the defaults for image downloads: 8 idle connections kept
+     * alive for 5 minutes, up to 64 concurrent requests and 16 per host, a 10 second
+     * connect timeout, a 60 second read timeout and no bandwidth cap.
+     *
+     * @return The builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the number of idle connections kept in the pool.
+     *
+     * @return The maximum number of idle connections.
+     */
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    /**
+     * Returns how long idle connections are kept alive.
+     *
+     * @return The keep-alive duration.
+     */
+    public Duration getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Returns the maximum number of concurrent requests.
+     *
+     * @return The maximum number of requests.
+     */
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * Returns the maximum number of concurrent requests per host.
+     *
+     * @return The maximum number of requests per host.
+     */
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * Returns the timeout for establishing connections.
+     *
+     * @return The connect timeout.
+     */
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Returns the maximum time between two reads of a response.
+     *
+     * @return The read timeout.
+     */
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Returns the maximum duration of a whole call.
+     *
+     * @return The call timeout, or {@link Duration#ZERO} for no limit.
+     */
+    public Duration getCallTimeout() {
+        return callTimeout;
+    }
+
+    /**
+     * Returns the bandwidth cap shared by all responses of this profile.
+     *
+     * @return The number of bytes per second, or 0 for no cap.
+     */
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    /**
+     * Builder of {@link TransportProfile}.
+     */
+    public static final class Builder {
+
+        private int maxIdleConnections = 8;
+        private Duration keepAlive = Duration.ofMinutes(5);
+        private int maxRequests = 64;
+        private int maxRequestsPerHost = 16;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration readTimeout = Duration.ofSeconds(60);
+        private Duration callTimeout = Duration.ZERO;
+        private long maxBytesPerSecond;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the number of idle connections kept in the pool.
+         *
+         * @param maxIdleConnections The maximum number of idle connections.
+         * @return This builder.
+         */
+        public Builder maxIdleConnections(int maxIdleConnections) {
+            this.maxIdleConnections = maxIdleConnections;
+            return this;
+        }
+
+        /**
+         * Sets how long idle connections are kept alive.
+         *
+         * @param keepAlive The keep-alive duration.
+         * @return This builder.
+         */
+        public Builder keepAlive(Duration keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of concurrent requests.
+         *
+         * @param maxRequests The maximum number of requests.
+         * @return This builder.
+         */
+        public Builder maxRequests(int maxRequests) {
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of concurrent requests per host.
+         *
+         * @param maxRequestsPerHost The maximum number of requests per host.
+         * @return This builder.
+         */
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * Sets the timeout for establishing connections.
+         *
+         * @param connectTimeout The connect timeout.
+         * @return This builder.
+         */
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time between two reads of a response.
+         *
+         * @param readTimeout The read timeout.
+         * @return This builder.
+         */
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the maximum duration of a whole call, including the download of the body.
+         *
+         * @param callTimeout The call timeout, or {@link Duration#ZERO} for no limit.
+         * @return This builder.
+         */
+        public Builder callTimeout(Duration callTimeout) {
+            this.callTimeout = callTimeout;
+            return this;
+        }
+
+        /**
+         * Caps the bandwidth of all responses of this profile together.
+         *
+         * @param maxBytesPerSecond The number of bytes per second, or 0 for no cap.
+         * @return This builder.
+         */
+        public Builder maxBytesPerSecond(long maxBytesPerSecond) {
+            if (maxBytesPerSecond < 0) {
+                throw new IllegalArgumentException("maxBytesPerSecond must not be negative");
+            }
+            this.maxBytesPerSecond = maxBytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Builds the profile.
+         *
+         * @return The profile.
+         */
+        public TransportProfile build() {
+            return new TransportProfile(this);
+        }
+    }
+}
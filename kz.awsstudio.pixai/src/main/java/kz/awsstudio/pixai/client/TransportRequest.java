@@ -0,0 +1,230 @@
+package kz.awsstudio.pixai.client;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable HTTP request handed to a {@link Transport}.
+ */
+public final class TransportRequest {
+
+    private final String method;
+    private final String url;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private final String contentType;
+    private final Duration timeout;
+
+    private TransportRequest(Builder builder) {
+        this.method = builder.method;
+        this.url = builder.url;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(builder.headers));
+        this.body = builder.body;
+        this.contentType = builder.contentType;
+        this.timeout = builder.timeout;
+    }
+
+    private TransportRequest(TransportRequest template, String method, String contentType, byte[] body, Duration timeout) {
+        this.method = method;
+        this.url = template.url;
+        this.headers = template.headers;
+        this.body = body;
+        this.contentType = contentType;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Creates a builder for a GET request.
+     *
+     * @param url The URL of the request.
+     * @return The builder.
+     */
+    public static Builder builder(String url) {
+        return new Builder(url);
+    }
+
+    /**
+     * Creates a builder initialized with the settings of this request.
+     *
+     * @return The builder.
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder(url);
+        builder.method = method;
+        builder.headers.putAll(headers);
+        builder.body = body;
+        builder.contentType = contentType;
+        builder.timeout = timeout;
+        return builder;
+    }
+
+    /**
+     * Returns a POST request to the same URL with the same headers and the given body.
+     * The headers are shared with this request, which makes this the cheap way to
+     * send many requests built from one template.
+     *
+     * @param contentType The media type of the body.
+     * @param body The body; the array must not be modified afterwards.
+     * @return The new request.
+     */
+    public TransportRequest withBody(String contentType, byte[] body) {
+        return new TransportRequest(this, "POST", contentType, body, timeout);
+    }
+
+    /**
+     * Returns a copy of this request with another time limit. The headers are shared.
+     *
+     * @param timeout The timeout, or null to use the default of the transport.
+     * @return The new request.
+     */
+    public TransportRequest withTimeout(Duration timeout) {
+        return new TransportRequest(this, method, contentType, body, timeout);
+    }
+
+    /**
+     * Returns the HTTP method.
+     *
+     * @return The method, for example "GET" or "POST".
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the URL of the request.
+     *
+     * @return The URL.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns the request headers, without the content type.
+     *
+     * @return An unmodifiable map of the headers.
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns the body of the request. The array must not be modified.
+     *
+     * @return The body, or null if the request has none.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Returns the media type of the body.
+     *
+     * @return The content type, or null if the request has no body.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Returns the time limit of the whole exchange.
+     *
+     * @return The timeout, or null to use the default of the transport.
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Builder of {@link TransportRequest}.
+     */
+    public static final class Builder {
+
+        private String method = "GET";
+        private final String url;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private byte[] body;
+        private String contentType;
+        private Duration timeout;
+
+        private Builder(String url) {
+            if (url == null) {
+                throw new IllegalArgumentException("url must not be null");
+            }
+            this.url = url;
+        }
+
+        /**
+         * Sets the HTTP method.
+         *
+         * @param method The method, for example "HEAD".
+         * @return This builder.
+         */
+        public Builder method(String method) {
+            this.method = method;
+            return this;
+        }
+
+        /**
+         * Makes the request a POST with the given body.
+         *
+         * @param contentType The media type of the body.
+         * @param body The body; the array must not be modified afterwards.
+         * @return This builder.
+         */
+        public Builder post(String contentType, byte[] body) {
+            this.method = "POST";
+            this.contentType = contentType;
+            this.body = body;
+            return this;
+        }
+
+        /**
+         * Makes the request a PUT with the given body.
+         *
+         * @param contentType The media type of the body.
+         * @param body The body; the array must not be modified afterwards.
+         * @return This builder.
+         */
+        public Builder put(String contentType, byte[] body) {
+            this.method = "PUT";
+            this.contentType = contentType;
+            this.body = body;
+            return this;
+        }
+
+        /**
+         * Sets a request header, replacing a previous value.
+         *
+         * @param name The name of the header.
+         * @param value The value of the header.
+         * @return This builder.
+         */
+        public Builder header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        /**
+         * Sets the time limit of the whole exchange.
+         *
+         * @param timeout The timeout, or null to use the default of the transport.
+         * @return This builder.
+         */
+        public Builder timeout(Duration timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * Builds the request.
+         *
+         * @return The immutable request.
+         */
+        public TransportRequest build() {
+            return new TransportRequest(this);
+        }
+    }
+}
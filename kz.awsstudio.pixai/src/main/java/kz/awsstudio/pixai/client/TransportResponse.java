@@ -0,0 +1,84 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Response of a {@link Transport}. The body is streamed and must be closed,
+ * either by reading it to the end through {@link #bodyString()} or by calling {@link #close()}.
+ */
+public interface TransportResponse extends Closeable {
+
+    /**
+     * Returns the HTTP status code.
+     *
+     * @return The status code.
+     */
+    int code();
+
+    /**
+     * Returns the first value of a response header.
+     *
+     * @param name The name of the header, case-insensitive.
+     * @return The value, or null if the header is absent.
+     */
+    String header(String name);
+
+    /**
+     * Returns the size of the body announced by the server.
+     *
+     * @return The number of bytes, or -1 if unknown.
+     */
+    long contentLength();
+
+    /**
+     * Returns the body of the response as a stream.
+     *
+     * @return The stream of the body.
+     */
+    InputStream body();
+
+    /**
+     * Returns the body of the response as a channel, for copying it into a file
+     * through a {@link java.nio.ByteBuffer} without an intermediate stream.
+     * Transports that buffer the body natively should override this method.
+     *
+     * @return The channel of the body.
+     */
+    default ReadableByteChannel bodyChannel() {
+        return Channels.newChannel(body());
+    }
+
+    /**
+     * Closes the body and releases the connection.
+     */
+    @Override
+    void close();
+
+    /**
+     * Checks whether the status code is in the range 200 to 299.
+     *
+     * @return True if the request succeeded.
+     */
+    default boolean isSuccessful() {
+        return code() >= 200 && code() < 300;
+    }
+
+    /**
+     * Reads the whole body as UTF-8 text and closes the response.
+     *
+     * @return The body.
+     * @throws IOException If an error occurs while reading the body.
+     */
+    default String bodyString() throws IOException {
+        try (InputStream in = body()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } finally {
+            close();
+        }
+    }
+}
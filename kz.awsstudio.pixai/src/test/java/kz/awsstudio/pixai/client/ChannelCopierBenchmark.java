@@ -0,0 +1,269 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Compares the ways of saving a response body to a file:
+ * <ul>
+ * <li>{@code BYTES}: the body read into one array and written with a
+ * {@link FileOutputStream}, as the client did before the copier. Over OkHttp this
+ * is the original {@code response.body().bytes()}; the other sources read the
+ * stream to its end.</li>
+ * <li>{@code HEAP}: {@link ChannelCopier#HEAP}, pooled heap buffers.</li>
+ * <li>{@code DIRECT}: {@link ChannelCopier#DIRECT}, pooled direct buffers.</li>
+ * </ul>
+ * The body comes from memory ({@code MEMORY}) or from a local HTTP server through
+ * {@link JdkHttpTransport} ({@code JDK}) or {@link OkHttpTransport} ({@code OKHTTP}).
+ * <p>
+ * Besides the throughput, every iteration prints the CPU time the client threads
+ * spent per GiB saved, measured with {@link ThreadMXBean} over all threads but
+ * those of the local server, and {@link #main} adds the GC profiler for the
+ * allocation per operation. Run the {@link #main} method from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChannelCopierBenchmark {
+
+    private static final String SERVER_THREAD = "stand-in-";
+    private static final double GIB = 1024.0 * 1024 * 1024;
+
+    @Param({"MEMORY", "JDK", "OKHTTP"})
+    public String source;
+
+    @Param({"BYTES", "HEAP", "DIRECT"})
+    public String mode;
+
+    @Param({"4194304"})
+    public int size;
+
+    private ChannelCopier copier;
+    private byte[] body;
+    private Path file;
+    private FileChannel target;
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private Transport transport;
+    private TransportRequest request;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final Map<Long, Long> cpuAtStart = new HashMap<>();
+    private long copied;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        copier = "DIRECT".equals(mode) ? ChannelCopier.DIRECT : ChannelCopier.HEAP;
+        body = new byte[size];
+        new Random(1).nextBytes(body);
+        file = Files.createTempFile("channel-copier", ".part");
+        target = FileChannel.open(file, StandardOpenOption.WRITE);
+        if (!"MEMORY".equals(source)) {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/image.png", this::serve);
+            serverThreads = Executors.newCachedThreadPool(r -> new Thread(r, SERVER_THREAD + r.hashCode()));
+            server.setExecutor(serverThreads);
+            server.start();
+            transport = "OKHTTP".equals(source) ? new OkHttpTransport(new OkHttpClient()) : new JdkHttpTransport();
+            request = TransportRequest.builder("http://127.0.0.1:" + server.getAddress().getPort() + "/image.png").build();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        target.close();
+        Files.deleteIfExists(file);
+        if (server != null) {
+            server.stop(0);
+            serverThreads.shutdownNow();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startCpuCount() {
+        cpuAtStart.clear();
+        for (long id : threads.getAllThreadIds()) {
+            cpuAtStart.put(id, threads.getThreadCpuTime(id));
+        }
+        copied = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportCpuPerGib() {
+        long cpuNanos = 0;
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info == null || isServerThread(info.getThreadName())) {
+                continue;
+            }
+            long now = threads.getThreadCpuTime(info.getThreadId());
+            if (now >= 0) {
+                cpuNanos += now - Math.max(cpuAtStart.getOrDefault(info.getThreadId(), 0L), 0);
+            }
+        }
+        System.out.printf("%n%s/%s: %.0f ms CPU per GiB saved%n", source, mode,
+                copied == 0 ? 0 : cpuNanos / 1e6 * GIB / copied);
+    }
+
+    /**
+     * Saves one body to the file, overwriting the previous copy.
+     *
+     * @return The number of bytes saved.
+     * @throws IOException If the download or the copy fails.
+     */
+    @Benchmark
+    public long copy() throws IOException {
+        long count;
+        if ("BYTES".equals(mode) && "OKHTTP".equals(source)) {
+            OkHttpClient client = ((OkHttpTransport) transport).getClient();
+            try (Response response = client.newCall(new Request.Builder().url(request.getUrl()).build()).execute()) {
+                count = writeFile(response.body().bytes());
+            }
+        } else {
+            try (TransportResponse response = respond()) {
+                if ("BYTES".equals(mode)) {
+                    try (InputStream in = response.body()) {
+                        count = writeFile(in.readAllBytes());
+                    }
+                } else {
+                    count = copier.copy(response.bodyChannel(), target, 0, -1, bytes -> {
+                    });
+                }
+            }
+        }
+        copied += count;
+        return count;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ChannelCopierBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    /**
+     * Gets the body from the source of this trial.
+     *
+     * @return The response.
+     * @throws IOException If the request fails.
+     */
+    private TransportResponse respond() throws IOException {
+        if (transport == null) {
+            return new MemoryResponse(body);
+        }
+        try {
+            return transport.send(request).get();
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Writes a whole body with a stream, as the client did before the copier.
+     *
+     * @param bytes The body.
+     * @return The number of bytes written.
+     * @throws IOException If the file cannot be written.
+     */
+    private long writeFile(byte[] bytes) throws IOException {
+        try (OutputStream out = new FileOutputStream(file.toFile())) {
+            out.write(bytes);
+        }
+        return bytes.length;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "image/png");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static boolean isServerThread(String name) {
+        return name.startsWith(SERVER_THREAD) || name.startsWith("HTTP-Dispatcher");
+    }
+
+    /**
+     * Response whose body is read from memory, as through
+     * {@link Channels#newChannel(InputStream)} by the default
+     * {@link TransportResponse#bodyChannel()}.
+     */
+    private static final class MemoryResponse implements TransportResponse {
+
+        private final byte[] body;
+
+        private MemoryResponse(byte[] body) {
+            this.body = body;
+        }
+
+        @Override
+        public int code() {
+            return 200;
+        }
+
+        @Override
+        public String header(String name) {
+            return null;
+        }
+
+        @Override
+        public long contentLength() {
+            return body.length;
+        }
+
+        @Override
+        public InputStream body() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
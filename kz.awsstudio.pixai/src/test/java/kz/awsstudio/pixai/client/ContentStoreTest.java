@@ -0,0 +1,109 @@
+package kz.awsstudio.pixai.client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ContentStoreTest {
+
+    private static final byte[] CAT = "a picture of a cat".getBytes(StandardCharsets.UTF_8);
+    private static final String CAT_HASH = SigV4Signer.hashPayload(CAT);
+
+    @TempDir
+    Path root;
+
+    @Test
+    void storesAnImageUnderItsHashInFanOutDirectories() throws IOException {
+        ContentStore store = new ContentStore(root);
+
+        Path stored = store(store, "t1", CAT);
+
+        assertEquals(root.resolve("objects").resolve(CAT_HASH.substring(0, 2)).resolve(CAT_HASH.substring(2, 4))
+                .resolve(CAT_HASH + ".png"), stored);
+        assertArrayEquals(CAT, Files.readAllBytes(stored));
+        assertEquals(stored, store.find("t1"));
+    }
+
+    @Test
+    void storesTheSameBytesOnlyOnce() throws IOException {
+        ContentStore store = new ContentStore(root);
+
+        Path first = store(store, "t1", CAT);
+        Path second = store(store, "t2", CAT);
+        Path other = store(store, "t3", "a picture of a dog".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(first, second);
+        assertEquals(first, store.find("t2"));
+        assertEquals(other, store.find("t3"));
+        assertEquals(2, count(root.resolve("objects")));
+        assertEquals(0, count(root.resolve("incoming")));
+    }
+
+    @Test
+    void keepsTheIndexAcrossRestarts() throws IOException {
+        ContentStore store = new ContentStore(root);
+        store(store, "t1", "first".getBytes(StandardCharsets.UTF_8));
+        Path latest = store(store, "t1", CAT);
+        store(store, "t1", CAT);
+
+        ContentStore reopened = new ContentStore(root);
+
+        assertEquals(latest, reopened.find("t1"));
+        assertNull(reopened.find("t2"));
+        assertEquals(2, Files.readAllLines(root.resolve("tasks.tsv")).size());
+    }
+
+    @Test
+    void discardsAnAbortedImage() throws IOException {
+        ContentStore store = new ContentStore(root);
+        ImageSink.Output<Path> output = store.open(image("t1"));
+        output.write(ByteBuffer.wrap(CAT));
+
+        output.abort();
+
+        assertNull(store.find("t1"));
+        assertEquals(0, count(root.resolve("objects")));
+        assertEquals(0, count(root.resolve("incoming")));
+    }
+
+    @Test
+    void linksTheImageOfATaskUnderAnotherName() throws IOException {
+        ContentStore store = new ContentStore(root, 1);
+        Path stored = store(store, "t1", CAT);
+        assertEquals(root.resolve("objects").resolve(CAT_HASH.substring(0, 2)).resolve(CAT_HASH + ".png"), stored);
+
+        Path link = store.link("t1", root.resolve("cat.png"));
+
+        assertArrayEquals(CAT, Files.readAllBytes(link));
+        assertThrows(IOException.class, () -> store.link("t2", root.resolve("dog.png")));
+    }
+
+    private static Path store(ContentStore store, String taskId, byte[] bytes) throws IOException {
+        ImageSink.Output<Path> output = store.open(image(taskId));
+        int half = bytes.length / 2;
+        output.write(ByteBuffer.wrap(bytes, 0, half));
+        output.write(ByteBuffer.wrap(bytes, half, bytes.length - half));
+        return output.commit();
+    }
+
+    private static ImageInfo image(String taskId) {
+        return new ImageInfo(taskId, "m-" + taskId, "https://images/" + taskId + ".png", "image/png", -1);
+    }
+
+    private static long count(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+}
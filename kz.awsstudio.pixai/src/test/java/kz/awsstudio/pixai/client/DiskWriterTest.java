@@ -0,0 +1,152 @@
+package kz.awsstudio.pixai.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DiskWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void renamesTheFilesAndDeletesTheirMetadata() throws Exception {
+        DiskWriter writer = new DiskWriter(2, 4);
+        try {
+            List<CompletableFuture<Path>> saved = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                Path part = part("image" + i, "bytes " + i);
+                Path meta = Files.writeString(directory.resolve("image" + i + ResumableDownload.META_SUFFIX), "validator=x");
+                Path target = directory.resolve("image" + i + ".png");
+                saved.add(commit(writer, part, meta, () -> target));
+            }
+
+            for (int i = 0; i < 10; i++) {
+                Path file = saved.get(i).get(5, TimeUnit.SECONDS);
+                assertEquals(directory.resolve("image" + i + ".png"), file);
+                assertEquals("bytes " + i, Files.readString(file));
+            }
+            try (var files = Files.list(directory)) {
+                assertEquals(10, files.count());
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    void waitsForAPlaceWithoutBlockingWhenTheWritersAreBusy() throws Exception {
+        DiskWriter writer = new DiskWriter(1, 1);
+        CountDownLatch disk = new CountDownLatch(1);
+        try {
+            CompletableFuture<Path> first = commit(writer, part("first", "1"), null, () -> {
+                await(disk);
+                return directory.resolve("first.png");
+            });
+            List<CompletableFuture<DiskWriter.Place>> places = new ArrayList<>();
+            List<CompletableFuture<Path>> later = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < 20; i++) {
+                Path part = part("later" + i, "2");
+                Path target = directory.resolve("later" + i + ".png");
+                CompletableFuture<DiskWriter.Place> place = writer.reserve();
+                places.add(place);
+                later.add(place.thenCompose(granted -> granted.commit(part, null, () -> target)));
+            }
+
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+            assertFalse(first.isDone());
+            assertTrue(places.stream().noneMatch(CompletableFuture::isDone), "no place is free while the first file is written");
+
+            disk.countDown();
+            CompletableFuture.allOf(later.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+            assertEquals(directory.resolve("first.png"), first.get());
+        } finally {
+            disk.countDown();
+            writer.close();
+        }
+    }
+
+    @Test
+    void grantsAReleasedOrWithdrawnPlaceToTheNextRequest() throws Exception {
+        DiskWriter writer = new DiskWriter(1, 1);
+        try {
+            DiskWriter.Place first = writer.reserve().get(5, TimeUnit.SECONDS);
+            CompletableFuture<DiskWriter.Place> withdrawn = writer.reserve();
+            CompletableFuture<DiskWriter.Place> next = writer.reserve();
+            withdrawn.cancel(false);
+            assertFalse(next.isDone());
+
+            first.release();
+            first.release();
+
+            DiskWriter.Place granted = next.get(5, TimeUnit.SECONDS);
+            assertFalse(writer.reserve().isDone());
+            Path target = directory.resolve("next.png");
+            assertEquals(target, granted.commit(part("next", "1"), null, () -> target).get(5, TimeUnit.SECONDS));
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    void closingFinishesQueuedFilesAndStopsTheWriters() throws Exception {
+        DiskWriter writer = new DiskWriter(1, 1);
+        CountDownLatch disk = new CountDownLatch(1);
+        AtomicReference<Thread> writerThread = new AtomicReference<>();
+        CompletableFuture<Path> queued = commit(writer, part("queued", "1"), null, () -> {
+            writerThread.set(Thread.currentThread());
+            await(disk);
+            return directory.resolve("queued.png");
+        });
+        CompletableFuture<Path> waiting = commit(writer, part("waiting", "2"), null, () -> directory.resolve("waiting.png"));
+
+        writer.close();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertTrue(failure.getCause() instanceof IOException);
+        assertTrue(Files.exists(directory.resolve("waiting.part")));
+        disk.countDown();
+        assertEquals(directory.resolve("queued.png"), queued.get(5, TimeUnit.SECONDS));
+        writerThread.get().join(5000);
+        assertFalse(writerThread.get().isAlive());
+        assertThrows(ExecutionException.class,
+                () -> commit(writer, part("late", "3"), null, () -> directory.resolve("late.png")).get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Reserves a place and hands over a file through it, as a download does.
+     */
+    private static CompletableFuture<Path> commit(DiskWriter writer, Path part, Path meta, DiskWriter.Target target) {
+        return writer.reserve().thenCompose(place -> place.commit(part, meta, target));
+    }
+
+    private Path part(String name, String content) throws IOException {
+        return Files.write(directory.resolve(name + ResumableDownload.PART_SUFFIX), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * In-memory stand-in for the PixAI API and its media host, used as the
+ * {@link Transport} of a client under test. It answers the GraphQL operations of
+ * the client, serves one image per task and records what it was sent.
+ * Responses are produced on threads of its own after a short latency, so that,
+ * as with a real transport, no response is ready before the caller of
+ * {@link #send(TransportRequest)} has attached its stages.
+ */
+final class FakePixAI implements Transport {
+
+    static final String MEDIA_URL = "https://media.test/";
+    static final int IMAGE_SIZE = 512 * 1024;
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final long LATENCY_MILLIS = 50;
+
+    final byte[] image = new byte[IMAGE_SIZE];
+    final List<String> operations = new CopyOnWriteArrayList<>();
+    final List<JSONObject> statusChecks = new CopyOnWriteArrayList<>();
+    final Set<String> cancelled = ConcurrentHashMap.newKeySet();
+    final AtomicInteger active = new AtomicInteger();
+    final AtomicInteger maxActive = new AtomicInteger();
+    final AtomicLong bytesServed = new AtomicLong();
+    final AtomicInteger bodiesClosed = new AtomicInteger();
+
+    /**
+     * Number of status checks that see a new task running before it completes.
+     */
+    volatile int runningChecks;
+
+    /**
+     * Keeps every task running until it is cancelled.
+     */
+    volatile boolean holdTasks;
+
+    /**
+     * Final status of a task that stops running.
+     */
+    volatile String finalStatus = "completed";
+
+    /**
+     * Answers the getCompletedTask query with an error.
+     */
+    volatile boolean failCompletedTask;
+
+    /**
+     * Rejects status checks that select the media, as a server without that field would.
+     */
+    volatile boolean rejectMediaInChecks;
+
+    /**
+     * Announces byte ranges in answer to HEAD requests of an image.
+     */
+    volatile boolean acceptRanges;
+
+    /**
+     * Pause before each chunk of an image, to stream it slowly.
+     */
+    volatile long chunkDelayMillis;
+
+    /**
+     * Counted down when the first chunk of an image has been served.
+     */
+    final CountDownLatch streaming = new CountDownLatch(1);
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "fake-pixai");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger taskCount = new AtomicInteger();
+    private final Map<String, Task> tasks = new ConcurrentHashMap<>();
+
+    FakePixAI() {
+        new Random(7).nextBytes(image);
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> send(TransportRequest request) {
+        CompletableFuture<TransportResponse> result = new CompletableFuture<>();
+        CompletableFuture.delayedExecutor(LATENCY_MILLIS, TimeUnit.MILLISECONDS, executor).execute(() -> {
+            TransportResponse response = respond(request);
+            if (!result.complete(response)) {
+                response.close();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the operations sent after the given number of operations.
+     *
+     * @param from The number of operations to skip.
+     * @return The names of the later operations, media requests as "GET media" or "HEAD media".
+     */
+    List<String> operationsSince(int from) {
+        return operations.subList(from, operations.size());
+    }
+
+    private TransportResponse respond(TransportRequest request) {
+        if (request.getUrl().startsWith(MEDIA_URL)) {
+            return download(request);
+        }
+        if (request.getBody() == null) {
+            return new Response(200, "");
+        }
+        JSONObject body = new JSONObject(new String(request.getBody(), StandardCharsets.UTF_8));
+        String query = body.getString("query");
+        String operation = query.substring(query.indexOf(' ') + 1, query.indexOf('('));
+        JSONObject variables = body.getJSONObject("variables");
+        operations.add(operation);
+        switch (operation) {
+            case "createGenerationTask":
+                return createTask(variables.getJSONObject("parameters"));
+            case "getTasksById":
+                if (rejectMediaInChecks && query.contains("media")) {
+                    return new Response(400, "{\"errors\":[{\"message\":\"Cannot query field media on type Task\"}]}");
+                }
+                return checkTasks(variables);
+            case "getCompletedTask":
+                if (failCompletedTask) {
+                    return new Response(200, "{\"errors\":[{\"message\":\"Cannot query field media\"}],\"data\":null}");
+                }
+                return data(new JSONObject().put("task", task(variables.getString("id"), true)));
+            case "getTaskById":
+                return data(new JSONObject().put("task", new JSONObject().put("outputs", outputs(variables.getString("id")))));
+            case "getMediaById":
+                return data(new JSONObject().put("media", media(variables.getString("id").substring("media-".length()))));
+            case "cancelGenerationTask":
+                String taskId = variables.getString("id");
+                cancelled.add(taskId);
+                tasks.get(taskId).status = "cancelled";
+                return data(new JSONObject().put("cancelGenerationTask", new JSONObject().put("id", taskId)));
+            default:
+                return new Response(400, "{\"errors\":[{\"message\":\"Unknown operation " + operation + "\"}]}");
+        }
+    }
+
+    private TransportResponse createTask(JSONObject parameters) {
+        if (parameters.getString("prompts").contains("fail")) {
+            return new Response(500, "{\"errors\":[{\"message\":\"Internal error\"}]}");
+        }
+        String taskId = "task-" + taskCount.incrementAndGet();
+        tasks.put(taskId, new Task());
+        int now = active.incrementAndGet();
+        maxActive.accumulateAndGet(now, Math::max);
+        return data(new JSONObject().put("createGenerationTask", new JSONObject().put("id", taskId)));
+    }
+
+    private TransportResponse checkTasks(JSONObject variables) {
+        statusChecks.add(variables);
+        JSONObject data = new JSONObject();
+        for (int i = 0; variables.has("id" + i); i++) {
+            String taskId = variables.getString("id" + i);
+            Task task = tasks.get(taskId);
+            synchronized (task) {
+                task.checks++;
+                if ("running".equals(task.status) && !holdTasks && task.checks > runningChecks) {
+                    task.status = finalStatus;
+                }
+            }
+            data.put("t" + i, task(taskId, variables.optBoolean("m" + i)));
+        }
+        return data(data);
+    }
+
+    private JSONObject task(String taskId, boolean withMedia) {
+        String status = tasks.get(taskId).status;
+        JSONObject task = new JSONObject().put("id", taskId).put("status", status);
+        if (withMedia) {
+            boolean completed = "completed".equals(status);
+            task.put("outputs", completed ? outputs(taskId) : JSONObject.NULL);
+            task.put("media", completed ? media(taskId.substring("task-".length())) : JSONObject.NULL);
+        }
+        return task;
+    }
+
+    private static JSONObject outputs(String taskId) {
+        return new JSONObject().put("mediaId", "media-" + taskId.substring("task-".length()));
+    }
+
+    private static JSONObject media(String number) {
+        return new JSONObject().put("urls", new JSONArray()
+                .put(new JSONObject().put("variant", "THUMBNAIL"))
+                .put(new JSONObject().put("variant", "PUBLIC").put("url", MEDIA_URL + "media-" + number + ".png")));
+    }
+
+    private TransportResponse download(TransportRequest request) {
+        operations.add(request.getMethod() + " media");
+        Response response;
+        String range = request.getHeaders().get("Range");
+        if ("HEAD".equals(request.getMethod())) {
+            response = new Response(200, "");
+            response.headers.put("Content-Length", String.valueOf(image.length));
+        } else if (range != null && acceptRanges) {
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int first = Integer.parseInt(bounds[0]);
+            int end = bounds.length > 1 ? Integer.parseInt(bounds[1]) + 1 : image.length;
+            response = new Response(206, new SlowBody(first, end));
+            response.headers.put("Content-Length", String.valueOf(end - first));
+            response.headers.put("Content-Range", "bytes " + first + "-" + (end - 1) + "/" + image.length);
+        } else {
+            response = new Response(200, new SlowBody(0, image.length));
+            response.headers.put("Content-Length", String.valueOf(image.length));
+        }
+        if (acceptRanges) {
+            response.headers.put("Accept-Ranges", "bytes");
+        }
+        response.headers.put("Content-Type", "image/png");
+        response.headers.put("ETag", "\"v1\"");
+        return response;
+    }
+
+    private static TransportResponse data(JSONObject data) {
+        return new Response(200, new JSONObject().put("data", data).toString());
+    }
+
+    /**
+     * Server-side state of a task.
+     */
+    private static final class Task {
+
+        private volatile String status = "running";
+        private int checks;
+    }
+
+    /**
+     * Streams a range of the image in chunks, with an optional pause before each
+     * chunk. Closing the stream wakes a read waiting in a pause, which then fails.
+     */
+    private final class SlowBody extends InputStream {
+
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final int end;
+        private final boolean firstOfTask;
+        private int position;
+
+        private SlowBody(int first, int end) {
+            this.position = first;
+            this.end = end;
+            this.firstOfTask = first == 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (position == end) {
+                finish();
+                return -1;
+            }
+            try {
+                if (closed.getCount() == 0 || chunkDelayMillis > 0 && closed.await(chunkDelayMillis, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Stream closed");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            }
+            int count = Math.min(Math.min(length, CHUNK_SIZE), end - position);
+            System.arraycopy(image, position, buffer, offset, count);
+            position += count;
+            bytesServed.addAndGet(count);
+            streaming.countDown();
+            return count;
+        }
+
+        @Override
+        public void close() {
+            if (closed.getCount() > 0) {
+                closed.countDown();
+                bodiesClosed.incrementAndGet();
+                finish();
+            }
+        }
+
+        private void finish() {
+            if (finished.compareAndSet(false, true) && firstOfTask) {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Response with a status, headers and a streamed body.
+     */
+    private static final class Response implements TransportResponse {
+
+        private final int code;
+        private final Map<String, String> headers = new ConcurrentHashMap<>();
+        private final InputStream body;
+
+        private Response(int code, String body) {
+            this(code, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        private Response(int code, InputStream body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        @Override
+        public int code() {
+            return code;
+        }
+
+        @Override
+        public String header(String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public long contentLength() {
+            String length = headers.get("Content-Length");
+            return length != null ? Long.parseLong(length) : -1;
+        }
+
+        @Override
+        public InputStream body() {
+            return body;
+        }
+
+        @Override
+        public void close() {
+            try {
+                body.close();
+            } catch (IOException e) {
+                // Nothing to release.
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Response{code=" + code + "}";
+        }
+    }
+
+    /**
+     * Returns the names of the operations sent so far, for assertion messages.
+     *
+     * @return The operations.
+     */
+    @Override
+    public String toString() {
+        return operations.toString();
+    }
+}
@@ -0,0 +1,208 @@
+package kz.awsstudio.pixai.client;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
+
+/**
+ * Compares building the OkHttp requests of the GraphQL operations the way the
+ * client does, from {@link GraphqlOperation} templates, the shared API request and
+ * the URL and media type cached by {@link OkHttpTransport}, with building them as
+ * the client did before: JSONObject trees, the query rebuilt per request, the
+ * Authorization header concatenated per request and the URL and media type parsed
+ * per request. Both sides build the same batched status query, so only the
+ * request building differs.
+ * <p>
+ * {@link #main} adds the GC profiler: {@code gc.alloc.rate.norm} is the allocation
+ * per request. Run it from the test classpath, or with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=kz.awsstudio.pixai.client.GraphqlOperationBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphqlOperationBenchmark {
+
+    private static final String API_URL = "https://api.pixai.art/graphql";
+    private static final String API_KEY = "benchmark-key";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final String CREATE_QUERY =
+            "mutation createGenerationTask($parameters: JSONObject!) { createGenerationTask(parameters: $parameters) { id } }";
+
+    @Param({"1", "8"})
+    public int batchSize;
+
+    private OkHttpTransport transport;
+    private PixAIClient client;
+    private GenerationRequest generation;
+    private List<String> taskIds;
+    private Set<String> likelyCompleted;
+
+    @Setup
+    public void setUp() throws IOException {
+        transport = new OkHttpTransport(new OkHttpClient());
+        client = PixAIClient.builder().apiKey(API_KEY).transport(transport).build();
+        generation = GenerationRequest.builder()
+                .prompt("1girl, solo, looking at viewer, long hair, cherry blossoms, detailed background")
+                .build();
+        taskIds = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            taskIds.add("1" + (7000000000000000000L + i));
+        }
+        likelyCompleted = Collections.singleton(taskIds.get(0));
+        requireSameBody(statusCheck(), statusCheckBefore());
+        requireSameBody(createTask(), createTaskBefore());
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+    }
+
+    /**
+     * Builds the status check of a batch of tasks as the client does.
+     *
+     * @return The request.
+     */
+    @Benchmark
+    public Request statusCheck() {
+        return transport.toRequest(client.taskStatusesRequest(taskIds, likelyCompleted, true));
+    }
+
+    /**
+     * Builds the same status check as the client did before the templates.
+     *
+     * @return The request.
+     */
+    @Benchmark
+    public Request statusCheckBefore() {
+        StringBuilder declarations = new StringBuilder();
+        StringBuilder fields = new StringBuilder();
+        JSONObject variables = new JSONObject();
+        for (int i = 0; i < taskIds.size(); i++) {
+            if (i > 0) {
+                declarations.append(", ");
+            }
+            declarations.append("$id").append(i).append(": ID!, $m").append(i).append(": Boolean!");
+            fields.append(" t").append(i).append(": task(id: $id").append(i).append(") { id status")
+                    .append(" outputs @include(if: $m").append(i).append(")")
+                    .append(" media @include(if: $m").append(i).append(") { urls { variant url } } }");
+            variables.put("id" + i, taskIds.get(i));
+            variables.put("m" + i, likelyCompleted.contains(taskIds.get(i)));
+        }
+        JSONObject body = new JSONObject();
+        body.put("query", "query getTasksById(" + declarations + ") {" + fields + " }");
+        body.put("variables", variables);
+        return toRequestBefore(apiRequestBefore(body.toString()));
+    }
+
+    /**
+     * Builds the createGenerationTask mutation as the client does.
+     *
+     * @return The request.
+     */
+    @Benchmark
+    public Request createTask() {
+        return transport.toRequest(client.createGenerationTaskRequest(generation));
+    }
+
+    /**
+     * Builds the createGenerationTask mutation as the client did before the templates.
+     *
+     * @return The request.
+     */
+    @Benchmark
+    public Request createTaskBefore() {
+        String body = "{\"query\":" + JSONObject.quote(CREATE_QUERY)
+                + ",\"variables\":{\"parameters\":" + generation.toParametersJson() + "}}";
+        return toRequestBefore(apiRequestBefore(body));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GraphqlOperationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    /**
+     * Builds an API request from scratch, as the client did before.
+     *
+     * @param jsonBody The JSON text of the request body.
+     * @return The request.
+     */
+    private static TransportRequest apiRequestBefore(String jsonBody) {
+        return TransportRequest.builder(API_URL)
+                .post(JSON_CONTENT_TYPE, jsonBody.getBytes(StandardCharsets.UTF_8))
+                .header("Authorization", "Bearer " + API_KEY)
+                .build();
+    }
+
+    /**
+     * Converts a request to an OkHttp request, parsing the URL and media type, as
+     * {@link OkHttpTransport} did before.
+     *
+     * @param request The request.
+     * @return The OkHttp request.
+     */
+    private static Request toRequestBefore(TransportRequest request) {
+        Request.Builder builder = new Request.Builder().url(request.getUrl());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        RequestBody body = request.getBody() == null ? null
+                : RequestBody.create(request.getBody(), MediaType.get(request.getContentType()));
+        return builder.method(request.getMethod(), body).build();
+    }
+
+    /**
+     * Checks that both ways build the same request, so the comparison is fair.
+     *
+     * @param actual The request built as the client does.
+     * @param before The request built as the client did before.
+     * @throws IOException If a body cannot be read.
+     */
+    private static void requireSameBody(Request actual, Request before) throws IOException {
+        if (!actual.url().equals(before.url()) || !actual.headers().equals(before.headers())
+                || !new JSONObject(bodyText(actual)).similar(new JSONObject(bodyText(before)))) {
+            throw new IllegalStateException("The requests differ:\n" + bodyText(actual) + "\n" + bodyText(before));
+        }
+    }
+
+    private static String bodyText(Request request) throws IOException {
+        Buffer buffer = new Buffer();
+        request.body().writeTo(buffer);
+        return buffer.readUtf8();
+    }
+}
@@ -0,0 +1,241 @@
+package kz.awsstudio.pixai.client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Drives the whole generation pipeline of the client against {@link FakePixAI}.
+ * The first status check of a task waits for the default poll interval of about
+ * five seconds, so each generation takes that long.
+ */
+class PixAIClientTest {
+
+    @TempDir
+    Path directory;
+
+    private final FakePixAI api = new FakePixAI();
+    private PixAIClient client;
+
+    @BeforeEach
+    void setUp() {
+        client = PixAIClient.builder().apiKey("key").transport(api).build();
+        client.setOutputFilePath(directory.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+    }
+
+    @Test
+    void generatesAndDownloadsAnImage() throws Exception {
+        Path image = client.runAsync("a cat").get(20, TimeUnit.SECONDS);
+
+        assertArrayEquals(api.image, Files.readAllBytes(image));
+        assertEquals(directory, image.getParent());
+        assertTrue(image.getFileName().toString().startsWith("picture_PixAI_"));
+        // Nothing is known about the duration yet, so the media is resolved after the status check.
+        assertEquals(Arrays.asList("createGenerationTask", "getTasksById", "getCompletedTask", "GET media"), api.operations);
+        assertEquals(Arrays.asList(image), images());
+    }
+
+    @Test
+    void fetchesTheMediaWithTheStatusOnceTheDurationIsKnown() throws Exception {
+        client.runAsync("a cat").get(20, TimeUnit.SECONDS);
+        int first = api.operations.size();
+        int firstChecks = api.statusChecks.size();
+
+        Path second = client.runAsync("a dog").get(20, TimeUnit.SECONDS);
+
+        assertArrayEquals(api.image, Files.readAllBytes(second));
+        assertEquals(Arrays.asList("createGenerationTask", "getTasksById", "GET media"), api.operationsSince(first));
+        assertTrue(api.statusChecks.get(firstChecks).getBoolean("m0"));
+    }
+
+    @Test
+    void leavesTheMediaOutOfStatusChecksThatTheServerRejects() throws Exception {
+        api.rejectMediaInChecks = true;
+        client.runAsync("a cat").get(20, TimeUnit.SECONDS);
+        int first = api.operations.size();
+
+        Path second = client.runAsync("a dog").get(20, TimeUnit.SECONDS);
+
+        assertArrayEquals(api.image, Files.readAllBytes(second));
+        assertEquals(Arrays.asList("createGenerationTask", "getTasksById", "getTasksById", "getCompletedTask", "GET media"),
+                api.operationsSince(first));
+    }
+
+    @Test
+    void fallsBackToTheSeparateMediaQueries() throws Exception {
+        api.failCompletedTask = true;
+
+        Path image = client.runAsync("a cat").get(20, TimeUnit.SECONDS);
+
+        assertArrayEquals(api.image, Files.readAllBytes(image));
+        assertEquals(Arrays.asList("createGenerationTask", "getTasksById", "getCompletedTask", "getTaskById", "getMediaById",
+                "GET media"), api.operations);
+    }
+
+    @Test
+    void failsATaskThatDoesNotComplete() throws Exception {
+        api.finalStatus = "failed";
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> client.runAsync("a cat").get(20, TimeUnit.SECONDS));
+
+        assertTrue(failure.getCause() instanceof IOException);
+        assertTrue(failure.getCause().getMessage().endsWith("finished with status: failed"), failure.getCause().getMessage());
+        assertTrue(images().isEmpty());
+    }
+
+    @Test
+    void checksTheStatusOfConcurrentTasksInBatches() throws Exception {
+        client.setPollBatchSize(4);
+        List<CompletableFuture<Path>> generations = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            generations.add(client.runAsync("image " + i));
+        }
+
+        for (CompletableFuture<Path> generation : generations) {
+            assertArrayEquals(api.image, Files.readAllBytes(generation.get(30, TimeUnit.SECONDS)));
+        }
+
+        // The first checks of all tasks fall within one second, which the poller covers with about ten ticks.
+        int largest = 0;
+        int checked = 0;
+        for (JSONObject check : api.statusChecks) {
+            int size = (int) check.keySet().stream().filter(name -> name.startsWith("id")).count();
+            largest = Math.max(largest, size);
+            checked += size;
+        }
+        assertEquals(20, checked);
+        assertTrue(api.statusChecks.size() < 20, api.statusChecks.size() + " status requests");
+        assertTrue(largest > 1 && largest <= 4, "largest batch " + largest);
+        assertEquals(20, images().size());
+    }
+
+    @Test
+    void runsABatchWithinTheConcurrencyLimit() throws Exception {
+        List<GenerationResult> results = client.runAll(Arrays.asList("a cat", "fail", "a dog"), 2);
+
+        assertEquals(3, results.size());
+        assertEquals("a cat", results.get(0).getPrompt());
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertTrue(results.get(1).getError().getMessage().contains("500"), results.get(1).getError().getMessage());
+        assertTrue(results.get(2).isSuccess());
+        assertArrayEquals(api.image, Files.readAllBytes(results.get(2).getPath()));
+        assertTrue(api.maxActive.get() <= 2, api.maxActive.get() + " generations at a time");
+        assertEquals(2, images().size());
+    }
+
+    @Test
+    void savesDurableImagesThroughALimitedDiskWriter() throws Exception {
+        client.close();
+        client = PixAIClient.builder().apiKey("key").transport(api).durableDownloads(true).diskWriter(1, 1).build();
+        client.setOutputFilePath(directory.toString());
+
+        List<GenerationResult> results = client.runAll(Arrays.asList("a cat", "a dog", "a bird"), 3);
+
+        for (GenerationResult result : results) {
+            assertTrue(result.isSuccess(), String.valueOf(result.getError()));
+            assertArrayEquals(api.image, Files.readAllBytes(result.getPath()));
+        }
+        assertEquals(3, images().size());
+    }
+
+    @Test
+    void cancelsTheDownloadOfAnImage() throws Exception {
+        api.chunkDelayMillis = 100;
+        CompletableFuture<Path> generation = client.runAsync("a cat");
+        assertTrue(api.streaming.await(20, TimeUnit.SECONDS));
+
+        generation.cancel(true);
+
+        assertStopsStreaming();
+        assertTrue(images().isEmpty());
+    }
+
+    @Test
+    void cancelsTheRangesOfASegmentedDownload() throws Exception {
+        client.close();
+        client = PixAIClient.builder().apiKey("key").transport(api).downloadSegments(4).segmentThreshold(1).build();
+        client.setOutputFilePath(directory.toString());
+        api.acceptRanges = true;
+        api.chunkDelayMillis = 100;
+        CompletableFuture<Path> generation = client.runAsync("a cat");
+        assertTrue(api.streaming.await(20, TimeUnit.SECONDS));
+
+        generation.cancel(true);
+
+        assertStopsStreaming();
+        assertEquals(Arrays.asList("createGenerationTask", "getTasksById", "getCompletedTask", "HEAD media"), api.operations.subList(0, 4));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals("[]", Arrays.toString(files.toArray()));
+        }
+    }
+
+    @Test
+    void stopsTheDownloadAtTheDeadline() throws Exception {
+        // The image streams for more than six seconds, starting about five seconds in.
+        api.chunkDelayMillis = 200;
+        long start = System.nanoTime();
+
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> client.runAsync(GenerationRequest.builder().prompt("a cat").build(), Duration.ofSeconds(7)).get(20, TimeUnit.SECONDS));
+
+        assertTrue(failure.getCause() instanceof DeadlineExceededException, String.valueOf(failure.getCause()));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(8));
+        assertTrue(api.bytesServed.get() > 0);
+        assertStopsStreaming();
+        assertTrue(images().isEmpty());
+    }
+
+    /**
+     * Waits until the bodies of all image requests have been closed, and checks
+     * that no more of the image is served afterwards.
+     */
+    private void assertStopsStreaming() throws InterruptedException {
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (api.bodiesClosed.get() < imageRequests() && System.nanoTime() < until) {
+            Thread.sleep(20);
+        }
+        assertEquals(imageRequests(), api.bodiesClosed.get());
+        long served = api.bytesServed.get();
+        Thread.sleep(500);
+        assertEquals(served, api.bytesServed.get());
+        assertTrue(served < FakePixAI.IMAGE_SIZE, served + " bytes served");
+    }
+
+    private int imageRequests() {
+        return (int) api.operations.stream().filter("GET media"::equals).count();
+    }
+
+    private List<Path> images() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> images = new ArrayList<>();
+            files.filter(file -> file.getFileName().toString().endsWith(".png")).forEach(images::add);
+            return images;
+        }
+    }
+}
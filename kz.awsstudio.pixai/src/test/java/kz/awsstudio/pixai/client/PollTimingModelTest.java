@@ -0,0 +1,115 @@
+package kz.awsstudio.pixai.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+class PollTimingModelTest {
+
+    private static final String CLASS = "model|25|3|1.0|false";
+
+    @Test
+    void usesTheDefaultIntervalForAnUnknownClass() {
+        PollTimingModel model = new PollTimingModel();
+        for (int i = 0; i < 100; i++) {
+            assertBetween(4500, 5500, model.nextDelayMillis(CLASS, 0));
+        }
+    }
+
+    @Test
+    void schedulesTheFirstCheckNearThePredictedCompletion() {
+        PollTimingModel model = new PollTimingModel();
+        model.record(CLASS, 8000);
+
+        // Mean 8000 ms, deviation 2000 ms: the first check is due at 6000 ms.
+        assertBetween(5400, 6600, model.nextDelayMillis(CLASS, 0));
+        assertBetween(3600, 4400, model.nextDelayMillis(CLASS, 2000));
+    }
+
+    @Test
+    void doesNotCapTheDelayBeforeAPredictionBeyondTheMaximumInterval() {
+        PollTimingModel model = new PollTimingModel();
+        model.record(CLASS, 120000);
+
+        // Mean 120 s, deviation 30 s: no check is due before 90 s.
+        assertBetween(81000, 99000, model.nextDelayMillis(CLASS, 0));
+        assertBetween(36000, 44000, model.nextDelayMillis(CLASS, 50000));
+    }
+
+    @Test
+    void backsOffWithinTheMaximumIntervalOnceThePredictionHasPassed() {
+        PollTimingModel model = new PollTimingModel();
+        model.record(CLASS, 8000);
+
+        // Right at the prediction, checks tighten to half the deviation.
+        assertBetween(900, 1100, model.nextDelayMillis(CLASS, 6000));
+        // A long overrun backs off, but never beyond 15 s.
+        long longest = 0;
+        for (long elapsed = 10000; elapsed <= 600000; elapsed += 10000) {
+            long delay = model.nextDelayMillis(CLASS, elapsed);
+            assertBetween(500 * 9 / 10, 15000 * 11 / 10, delay);
+            longest = Math.max(longest, delay);
+        }
+        assertTrue(longest > 13000, "the delay backs off to the maximum interval");
+    }
+
+    @Test
+    void neverChecksMoreOftenThanTheMinimumInterval() {
+        PollTimingModel model = new PollTimingModel();
+        for (int i = 0; i < 20; i++) {
+            model.record(CLASS, 1000);
+        }
+        for (long elapsed = 0; elapsed < 5000; elapsed += 250) {
+            assertTrue(model.nextDelayMillis(CLASS, elapsed) >= 450);
+        }
+    }
+
+    @Test
+    void followsAChangeOfTheDurationGradually() {
+        PollTimingModel model = new PollTimingModel();
+        model.record(CLASS, 10000);
+        for (int i = 0; i < 30; i++) {
+            model.record(CLASS, 20000);
+        }
+        // The mean has converged to 20 s and the deviation has decayed.
+        long delay = model.nextDelayMillis(CLASS, 0);
+        assertBetween(17000, 22000, delay);
+    }
+
+    @Test
+    void expectsCompletionFromThePredictionLessTheJitter() {
+        PollTimingModel model = new PollTimingModel();
+        assertFalse(model.likelyCompleted(CLASS, 600000));
+
+        model.record(CLASS, 8000);
+
+        // Predicted at 6000 ms; a check scheduled up to 10% early still counts, with a margin.
+        assertFalse(model.likelyCompleted(CLASS, 4500));
+        assertTrue(model.likelyCompleted(CLASS, 4800));
+        assertTrue(model.likelyCompleted(CLASS, 60000));
+    }
+
+    @Test
+    void classifiesByModelStepsAreaUpscaleAndTiling() {
+        JSONObject base = new JSONObject().put("modelId", "m1").put("samplingSteps", 25)
+                .put("width", 768).put("height", 1280).put("upscale", 1.5).put("enableTile", false)
+                .put("prompts", "a cat");
+        String baseClass = PollTimingModel.classify(base);
+
+        assertEquals(baseClass, PollTimingModel.classify(new JSONObject(base.toString()).put("prompts", "a dog")));
+        assertEquals(baseClass, PollTimingModel.classify(new JSONObject(base.toString()).put("width", 770)));
+        assertNotEquals(baseClass, PollTimingModel.classify(new JSONObject(base.toString()).put("modelId", "m2")));
+        assertNotEquals(baseClass, PollTimingModel.classify(new JSONObject(base.toString()).put("samplingSteps", 40)));
+        assertNotEquals(baseClass, PollTimingModel.classify(new JSONObject(base.toString()).put("width", 1024)));
+        assertNotEquals(baseClass, PollTimingModel.classify(new JSONObject(base.toString()).put("upscale", 2)));
+        assertNotEquals(baseClass, PollTimingModel.classify(new JSONObject(base.toString()).put("enableTile", true)));
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual >= min && actual <= max, actual + " is not between " + min + " and " + max);
+    }
+}
@@ -0,0 +1,69 @@
+package kz.awsstudio.pixai.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ProgressThrottleTest {
+
+    private final List<GenerationEvent.DownloadProgress> events = new ArrayList<>();
+
+    @Test
+    void deliversAtMostOneEventPerIntervalAndTheLastByte() {
+        ProgressThrottle throttle = new ProgressThrottle("t1", this::record, 60_000);
+        long length = 3 * 1024 * 1024;
+        for (long bytes = 8192; bytes < length; bytes += 8192) {
+            throttle.update(bytes, length);
+        }
+        throttle.update(length, length);
+
+        assertEquals(2, events.size());
+        assertEquals(8192, events.get(0).getBytes());
+        assertEquals(length, events.get(1).getBytes());
+        assertEquals(length, events.get(1).getContentLength());
+    }
+
+    @Test
+    void deliversAgainOnceTheIntervalHasPassed() throws Exception {
+        ProgressThrottle throttle = new ProgressThrottle("t1", this::record, 20);
+        throttle.update(1, 100);
+        throttle.update(2, 100);
+        Thread.sleep(40);
+        throttle.update(3, 100);
+
+        assertEquals(2, events.size());
+        assertEquals(3, events.get(1).getBytes());
+    }
+
+    @Test
+    void flushesTheHeldBackProgressOfAnUnknownSize() {
+        ProgressThrottle throttle = new ProgressThrottle("t1", this::record, 60_000);
+        throttle.update(10, -1);
+        throttle.update(20, -1);
+        throttle.update(30, -1);
+        throttle.flush();
+        throttle.flush();
+
+        assertEquals(2, events.size());
+        assertEquals(30, events.get(1).getBytes());
+    }
+
+    @Test
+    void dropsProgressThatIsNotAheadOfTheLastEvent() {
+        ProgressThrottle throttle = new ProgressThrottle("t1", this::record, 0);
+        throttle.update(50, 100);
+        throttle.update(40, 100);
+        throttle.update(100, 100);
+
+        assertEquals(2, events.size());
+        assertTrue(events.get(1).getBytes() > events.get(0).getBytes());
+    }
+
+    private void record(GenerationEvent event) {
+        events.add((GenerationEvent.DownloadProgress) event);
+    }
+}
@@ -0,0 +1,208 @@
+package kz.awsstudio.pixai.client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+class ResumableDownloadTest {
+
+    private static final int SIZE = 256 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private HttpServer server;
+    private final Transport transport = new JdkHttpTransport();
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private final AtomicInteger drops = new AtomicInteger();
+    private final AtomicLong lastProgress = new AtomicLong();
+    private volatile byte[] content = randomBytes(1);
+    private volatile String etag = "\"v1\"";
+    private volatile boolean stall;
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/image.png", this::serve);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void resumesWithARangeRequestAfterTheConnectionDrops() throws Exception {
+        drops.set(1);
+
+        Path part = run(3);
+
+        assertArrayEquals(content, Files.readAllBytes(part));
+        assertEquals(2, ranges.size());
+        assertNull(ranges.get(0));
+        long resumedAt = Long.parseLong(ranges.get(1).substring("bytes=".length(), ranges.get(1).indexOf('-')));
+        assertTrue(resumedAt > 0 && resumedAt <= SIZE / 2, "resumed at " + resumedAt);
+        assertTrue(ranges.get(1).endsWith("- If-Range " + etag));
+        assertEquals(SIZE, lastProgress.get());
+    }
+
+    @Test
+    void resumesAPartialFileLeftByAnEarlierDownload() throws Exception {
+        drops.set(1);
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> run(0));
+        assertTrue(failure.getCause() instanceof IOException);
+        Path part = directory.resolve("image.part");
+        long partial = Files.size(part);
+        assertTrue(partial > 0 && partial <= SIZE / 2, "kept " + partial);
+        assertTrue(Files.exists(ResumableDownload.metaFile(part)));
+
+        run(0);
+
+        assertArrayEquals(content, Files.readAllBytes(part));
+        assertEquals("bytes=" + partial + "- If-Range " + etag, ranges.get(1));
+    }
+
+    @Test
+    void startsOverWhenTheContentHasChanged() throws Exception {
+        drops.set(1);
+        assertThrows(ExecutionException.class, () -> run(0));
+        content = randomBytes(2);
+        etag = "\"v2\"";
+
+        Path part = run(0);
+
+        assertArrayEquals(content, Files.readAllBytes(part));
+    }
+
+    @Test
+    void doesNotRetryAClientError() throws Exception {
+        etag = null;
+        content = null;
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> run(3));
+
+        assertTrue(failure.getCause().getMessage().contains("404"));
+        assertEquals(1, ranges.size());
+        assertFalse(Files.exists(directory.resolve("image.part")));
+    }
+
+    @Test
+    void givesUpAtTheDeadlineWhenTheBodyStalls() throws Exception {
+        stall = true;
+        long start = System.nanoTime();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> run(3, Deadline.after(Duration.ofSeconds(1))));
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(failure.getCause() instanceof DeadlineExceededException, String.valueOf(failure.getCause()));
+        assertTrue(elapsedMillis >= 900 && elapsedMillis < 3000, "gave up after " + elapsedMillis + " ms");
+        assertEquals(1, ranges.size());
+        assertTrue(Files.size(directory.resolve("image.part")) > 0);
+    }
+
+    private Path run(int maxRetries) throws Exception {
+        return run(maxRetries, Deadline.NONE);
+    }
+
+    private Path run(int maxRetries, Deadline deadline) throws Exception {
+        TransportRequest request = TransportRequest.builder("http://127.0.0.1:" + server.getAddress().getPort() + "/image.png").build();
+        ResumableDownload download = new ResumableDownload(transport, transport::send, request,
+                directory.resolve("image.part"), maxRetries, (bytes, contentLength) -> lastProgress.set(bytes),
+                ChannelCopier.HEAP, deadline);
+        return download.run().get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Serves the content, honouring {@code Range} while {@code If-Range} matches, and
+     * drops the connection halfway through a full response while drops are left, or
+     * stalls there until the test ends.
+     */
+    private void serve(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        ranges.add(range == null ? null : range + " If-Range " + ifRange);
+        byte[] body = content;
+        if (body == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("ETag", etag);
+        int start = 0;
+        if (range != null && etag.equals(ifRange)) {
+            start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (body.length - 1) + "/" + body.length);
+            exchange.sendResponseHeaders(206, body.length - start);
+        } else {
+            exchange.sendResponseHeaders(200, body.length);
+        }
+        OutputStream out = exchange.getResponseBody();
+        if (stall) {
+            out.write(body, 0, body.length / 2);
+            out.flush();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+            return;
+        }
+        if (start == 0 && drops.getAndDecrement() > 0) {
+            out.write(body, 0, body.length / 2);
+            out.flush();
+            pause();
+            // Closing the exchange before the announced length drops the connection.
+            exchange.close();
+            return;
+        }
+        out.write(body, start, body.length - start);
+        exchange.close();
+    }
+
+    /**
+     * Gives the client time to read the bytes sent before the connection drops.
+     */
+    private static void pause() {
+        try {
+            Thread.sleep(200);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] randomBytes(long seed) {
+        byte[] bytes = new byte[SIZE];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
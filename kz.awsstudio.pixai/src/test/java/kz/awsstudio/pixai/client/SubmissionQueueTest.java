@@ -0,0 +1,144 @@
+package kz.awsstudio.pixai.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+class SubmissionQueueTest {
+
+    private final List<String> granted = new ArrayList<>();
+    private final Deque<SubmissionQueue.Slot> held = new ArrayDeque<>();
+    private CompletableFuture<SubmissionQueue.Slot> lastBulk;
+
+    @Test
+    void servesTheHighestLaneFirstWithoutAShare() {
+        SubmissionQueue queue = new SubmissionQueue(1, 0);
+        hold(queue);
+        request(queue, Priority.BULK, 2);
+        request(queue, Priority.NORMAL, 2);
+        request(queue, Priority.INTERACTIVE, 2);
+
+        drain();
+
+        assertEquals(List.of("INTERACTIVE", "INTERACTIVE", "NORMAL", "NORMAL", "BULK", "BULK"), granted);
+    }
+
+    @Test
+    void servesALowerLaneOnceItsCreditReachesOne() {
+        SubmissionQueue queue = new SubmissionQueue(1, 0.25);
+        hold(queue);
+        request(queue, Priority.INTERACTIVE, 8);
+        request(queue, Priority.BULK, 2);
+
+        drain();
+
+        assertEquals(List.of("INTERACTIVE", "INTERACTIVE", "INTERACTIVE", "INTERACTIVE", "BULK",
+                "INTERACTIVE", "INTERACTIVE", "INTERACTIVE", "INTERACTIVE", "BULK"), granted);
+    }
+
+    @Test
+    void everyWaitingLowerLaneEarnsCredit() {
+        SubmissionQueue queue = new SubmissionQueue(1, 0.5);
+        hold(queue);
+        request(queue, Priority.INTERACTIVE, 6);
+        request(queue, Priority.NORMAL, 1);
+        request(queue, Priority.BULK, 1);
+
+        drain();
+
+        // Both lower lanes reach a credit of one after two slots; the higher of them goes first.
+        assertEquals(List.of("INTERACTIVE", "INTERACTIVE", "NORMAL", "BULK", "INTERACTIVE", "INTERACTIVE",
+                "INTERACTIVE", "INTERACTIVE"), granted);
+    }
+
+    @Test
+    void aLaneLosesItsCreditWhenItRunsEmpty() {
+        SubmissionQueue queue = new SubmissionQueue(1, 0.5);
+        hold(queue);
+        request(queue, Priority.INTERACTIVE, 4);
+        request(queue, Priority.BULK, 1);
+
+        // The bulk request earns half a slot of credit, then is withdrawn.
+        release();
+        CompletableFuture<SubmissionQueue.Slot> withdrawn = lastBulk;
+        assertTrue(withdrawn.cancel(false));
+        release();
+        request(queue, Priority.BULK, 1);
+
+        drain();
+
+        // Without the reset the new bulk request would be served one slot earlier.
+        assertEquals(List.of("INTERACTIVE", "INTERACTIVE", "INTERACTIVE", "INTERACTIVE", "BULK"), granted);
+    }
+
+    @Test
+    void capsTheNumberOfActiveSlots() {
+        SubmissionQueue queue = new SubmissionQueue(2, 0);
+        request(queue, Priority.NORMAL, 3);
+        assertEquals(2, granted.size());
+
+        SubmissionQueue.Slot first = held.pollFirst();
+        first.release();
+        first.release();
+        assertEquals(3, granted.size());
+
+        CompletableFuture<SubmissionQueue.Slot> waiting = queue.acquire(Priority.NORMAL);
+        assertFalse(waiting.isDone());
+        queue.setMaxActive(3);
+        assertTrue(waiting.isDone());
+    }
+
+    @Test
+    void aWithdrawnRequestDoesNotTakeASlot() {
+        SubmissionQueue queue = new SubmissionQueue(1, 0);
+        hold(queue);
+        CompletableFuture<SubmissionQueue.Slot> withdrawn = queue.acquire(Priority.INTERACTIVE);
+        request(queue, Priority.NORMAL, 1);
+        withdrawn.cancel(false);
+
+        drain();
+
+        assertEquals(List.of("NORMAL"), granted);
+    }
+
+    /**
+     * Takes the only slot, so that the following requests queue up.
+     */
+    private void hold(SubmissionQueue queue) {
+        held.addLast(queue.acquire(Priority.INTERACTIVE).join());
+    }
+
+    private void request(SubmissionQueue queue, Priority priority, int count) {
+        for (int i = 0; i < count; i++) {
+            CompletableFuture<SubmissionQueue.Slot> request = queue.acquire(priority);
+            if (priority == Priority.BULK) {
+                lastBulk = request;
+            }
+            request.thenAccept(slot -> {
+                granted.add(priority.name());
+                held.addLast(slot);
+            });
+        }
+    }
+
+    /**
+     * Releases the oldest held slot, which grants the next one.
+     */
+    private void release() {
+        held.pollFirst().release();
+    }
+
+    private void drain() {
+        while (!held.isEmpty()) {
+            release();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package kz.awsstudio.pixai.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+class TaskSnapshotTest {
+
+    @Test
+    void parsesTheStatusOfAPoll() {
+        TaskSnapshot snapshot = TaskSnapshot.parse("t1", new JSONObject("{\"id\":\"t1\",\"status\":\"running\"}"));
+
+        assertEquals("t1", snapshot.getTaskId());
+        assertEquals("running", snapshot.getStatus());
+        assertNull(snapshot.getMediaId());
+        assertNull(snapshot.getDownloadUrl());
+        assertNull(snapshot.getError());
+        assertFalse(snapshot.isFinal());
+    }
+
+    @Test
+    void parsesTheMediaOfACompletedTask() {
+        TaskSnapshot snapshot = TaskSnapshot.parse("t1", new JSONObject("{\"id\":\"t1\",\"status\":\"completed\","
+                + "\"outputs\":{\"mediaId\":\"m1\",\"detailParameters\":{}},"
+                + "\"media\":{\"urls\":[{\"variant\":\"THUMBNAIL\"},{\"variant\":\"PUBLIC\",\"url\":\"https://images/m1.png\"},"
+                + "{\"variant\":\"ORIGINAL\",\"url\":\"https://images/m1-original.png\"}]}}"));
+
+        assertEquals("completed", snapshot.getStatus());
+        assertTrue(snapshot.isFinal());
+        assertEquals("m1", snapshot.getMediaId());
+        assertEquals("https://images/m1.png", snapshot.getDownloadUrl());
+    }
+
+    @Test
+    void toleratesMissingOrEmptyMedia() {
+        TaskSnapshot nullMedia = TaskSnapshot.parse("t1", new JSONObject("{\"status\":\"completed\",\"outputs\":{\"mediaId\":\"m1\"},\"media\":null}"));
+        assertEquals("m1", nullMedia.getMediaId());
+        assertNull(nullMedia.getDownloadUrl());
+
+        TaskSnapshot noUrls = TaskSnapshot.parse("t1", new JSONObject("{\"status\":\"completed\",\"outputs\":null,\"media\":{\"urls\":[]}}"));
+        assertNull(noUrls.getMediaId());
+        assertNull(noUrls.getDownloadUrl());
+    }
+
+    @Test
+    void rejectsATaskWithoutStatus() {
+        assertThrows(JSONException.class, () -> TaskSnapshot.parse("t1", new JSONObject("{\"id\":\"t1\"}")));
+    }
+
+    @Test
+    void recognisesTheFinalStatuses() {
+        assertTrue(new TaskSnapshot("t1", "completed", null, null).isFinal());
+        assertTrue(new TaskSnapshot("t1", "failed", null, null).isFinal());
+        assertTrue(new TaskSnapshot("t1", "cancelled", null, null).isFinal());
+        assertFalse(new TaskSnapshot("t1", "waiting", null, null).isFinal());
+    }
+
+    @Test
+    void carriesTheErrorOfAFailedQuery() {
+        TaskSnapshot snapshot = TaskSnapshot.failed("t1", "Task not found");
+
+        assertEquals("t1", snapshot.getTaskId());
+        assertEquals("Task not found", snapshot.getError());
+        assertNull(snapshot.getStatus());
+        assertFalse(snapshot.isFinal());
+    }
+}
@@ -0,0 +1,224 @@
+package kz.awsstudio.pixai.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+import org.java_websocket.server.WebSocketServer;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TaskSubscriptionTest {
+
+    private StandIn server;
+    private ScheduledExecutorService scheduler;
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private TaskSubscription subscription;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new StandIn();
+        server.start();
+        assertTrue(server.started.await(5, TimeUnit.SECONDS));
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        TaskSubscription.Listener listener = new TaskSubscription.Listener() {
+            @Override
+            public void onTaskUpdated(String taskId, String status) {
+                events.add("update " + taskId + " " + status);
+            }
+
+            @Override
+            public void onActiveChanged(boolean active) {
+                events.add("active " + active);
+            }
+        };
+        subscription = new TaskSubscription(URI.create("ws://127.0.0.1:" + server.getPort() + "/graphql"), "key",
+                listener, scheduler, 200, 100);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        subscription.stop();
+        server.stop(1000);
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void becomesActiveOnlyOnceTheServerDeliversOnTheSubscription() throws Exception {
+        subscription.acquire();
+        subscribe();
+
+        // The pong proves the client has handled everything sent before the ping.
+        server.send(new JSONObject().put("type", "ping"));
+        assertEquals("pong", server.next().getString("type"));
+        assertFalse(subscription.isActive());
+        assertNull(events.poll());
+
+        server.send(taskUpdated("task-1", "completed"));
+        assertEquals("active true", events.poll(5, TimeUnit.SECONDS));
+        assertEquals("update task-1 completed", events.poll(5, TimeUnit.SECONDS));
+        assertTrue(subscription.isActive());
+    }
+
+    @Test
+    void fallsBackToPollingWhenTheServerRejectsTheSubscription() throws Exception {
+        subscription.acquire();
+        subscribe();
+        server.send(taskUpdated("task-1", "running"));
+        assertEquals("active true", events.poll(5, TimeUnit.SECONDS));
+
+        server.send(new JSONObject().put("id", "1").put("type", "error").put("payload", new JSONObject()));
+        assertTrue(server.closed.await(5, TimeUnit.SECONDS));
+        assertEquals("update task-1 running", events.poll(5, TimeUnit.SECONDS));
+        assertEquals("active false", events.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void stopsReconnectingAfterRepeatedRejections() throws Exception {
+        subscription.acquire();
+        for (int i = 0; i < 3; i++) {
+            subscribe();
+            server.send(new JSONObject().put("id", "1").put("type", "error").put("payload", new JSONObject()));
+        }
+
+        assertNull(server.received.poll(1, TimeUnit.SECONDS));
+        assertEquals(3, server.connections.get());
+        subscription.release();
+        subscription.acquire();
+        assertNull(server.received.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void backsOffExponentiallyWithJitter() {
+        for (int failures = 0; failures < 10; failures++) {
+            long ceiling = Math.min(5000L << failures, 300000);
+            long delay = TaskSubscription.backoffMillis(5000, failures);
+            assertTrue(delay >= ceiling / 2 && delay <= ceiling, failures + " failures: " + delay + " ms");
+        }
+        long capped = TaskSubscription.backoffMillis(5000, 30);
+        assertTrue(capped >= 150000 && capped <= 300000, capped + " ms");
+    }
+
+    @Test
+    void closesTheSocketOnceNoTaskIsInFlight() throws Exception {
+        subscription.acquire();
+        subscription.acquire();
+        subscribe();
+        server.send(taskUpdated("task-1", "running"));
+        assertEquals("active true", events.poll(5, TimeUnit.SECONDS));
+
+        subscription.release();
+        assertFalse(server.closed.await(500, TimeUnit.MILLISECONDS));
+
+        subscription.release();
+        assertTrue(server.closed.await(5, TimeUnit.SECONDS));
+        assertEquals("update task-1 running", events.poll(5, TimeUnit.SECONDS));
+        assertEquals("active false", events.poll(5, TimeUnit.SECONDS));
+
+        subscription.acquire();
+        assertEquals("connection_init", server.next().getString("type"));
+    }
+
+    @Test
+    void keepsTheSocketWhenATaskArrivesWithinTheIdleTime() throws Exception {
+        subscription.acquire();
+        subscribe();
+        subscription.release();
+        subscription.acquire();
+        assertFalse(server.closed.await(500, TimeUnit.MILLISECONDS));
+        assertEquals(1, server.connections.get());
+    }
+
+    /**
+     * Runs the handshake of the protocol up to the subscribe message.
+     */
+    private void subscribe() throws Exception {
+        JSONObject init = server.next();
+        assertEquals("connection_init", init.getString("type"));
+        assertEquals("key", init.getJSONObject("payload").getString("token"));
+        server.send(new JSONObject().put("type", "connection_ack"));
+        JSONObject subscribe = server.next();
+        assertEquals("subscribe", subscribe.getString("type"));
+        assertEquals("1", subscribe.getString("id"));
+        assertTrue(subscribe.getJSONObject("payload").getString("query").contains("taskUpdated"));
+    }
+
+    private static JSONObject taskUpdated(String taskId, String status) {
+        JSONObject task = new JSONObject().put("id", taskId).put("status", status);
+        JSONObject data = new JSONObject().put("personalEvents", new JSONObject().put("taskUpdated", task));
+        return new JSONObject().put("id", "1").put("type", "next").put("payload", new JSONObject().put("data", data));
+    }
+
+    /**
+     * Local stand-in for the GraphQL WebSocket endpoint that records the received messages.
+     */
+    private static final class StandIn extends WebSocketServer {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private final AtomicInteger connections = new AtomicInteger();
+        private final BlockingQueue<JSONObject> received = new LinkedBlockingQueue<>();
+        private volatile WebSocket client;
+
+        private StandIn() {
+            super(new InetSocketAddress("127.0.0.1", 0), Collections.singletonList(new Draft_6455(Collections.emptyList(),
+                    Collections.<IProtocol>singletonList(new Protocol("graphql-transport-ws")))));
+            setReuseAddr(true);
+        }
+
+        private JSONObject next() throws InterruptedException {
+            JSONObject message = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message, "no message from the client");
+            return message;
+        }
+
+        private void send(JSONObject message) {
+            client.send(message.toString());
+        }
+
+        @Override
+        public void onOpen(WebSocket conn, ClientHandshake handshake) {
+            connections.incrementAndGet();
+            client = conn;
+        }
+
+        @Override
+        public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+            closed.countDown();
+        }
+
+        @Override
+        public void onMessage(WebSocket conn, String message) {
+            received.add(new JSONObject(message));
+        }
+
+        @Override
+        public void onError(WebSocket conn, Exception ex) {
+        }
+
+        @Override
+        public void onStart() {
+            started.countDown();
+        }
+    }
+}